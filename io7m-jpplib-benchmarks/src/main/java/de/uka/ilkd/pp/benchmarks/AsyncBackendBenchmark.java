@@ -0,0 +1,125 @@
+//This file is part of the Java™ Pretty Printer Library (JPPlib)
+//Copyright (c) 2009, Martin Giese
+//All rights reserved.
+//
+//Redistribution and use in source and binary forms, with or without 
+//modification, are permitted provided that the following conditions are met:
+// 
+// * Redistributions of source code must retain the above copyright 
+//   notice, this list of conditions and the following disclaimer.
+// * Redistributions in binary form must reproduce the above copyright 
+//   notice, this list of conditions and the following disclaimer in the 
+//   documentation and/or other materials provided with the distribution.
+// * Neither the name of the author nor the names of his contributors 
+//   may be used to endorse or promote products derived from this 
+//   software without specific prior written permission.
+// 
+//THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+//AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE 
+//IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+//ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE 
+//LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+//CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF 
+//SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+//INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+//CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+//ARISING IN ANY WAY OUT OF THE USE OF THIS  SOFTWARE, EVEN IF ADVISED OF 
+//THE POSSIBILITY OF SUCH DAMAGE.
+
+package de.uka.ilkd.pp.benchmarks;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.uka.ilkd.pp.AsyncBackend;
+import de.uka.ilkd.pp.Backend;
+import de.uka.ilkd.pp.BufferedWriterBackend;
+import de.uka.ilkd.pp.Layouter;
+
+/** Sample the time taken by each step of a long layout written to a 
+ * slow sink, directly and through an {@link AsyncBackend}.  The 
+ * percentiles show how much of the sink's latency the layout thread
+ * sees.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+public class AsyncBackendBenchmark {
+
+	/** A Writer which discards its input, taking some time for each
+	 * call */
+	static class SlowWriter extends Writer {
+		private final long nanos;
+
+		SlowWriter(long nanos) {
+			this.nanos = nanos;
+		}
+
+		public void write(char[] cbuf, int off, int len) {
+			LockSupport.parkNanos(nanos);
+		}
+
+		public void flush() {
+		}
+
+		public void close() {
+		}
+	}
+
+	/** The time taken by each write to the sink */
+	@Param({"50000"})
+	public long sinkNanos;
+
+	@Param({"false", "true"})
+	public boolean async;
+
+	private String[] words;
+
+	private Layouter<IOException> layouter;
+
+	private int i = 0;
+
+	@Setup
+	public void setUp() {
+		words = Inputs.words(1024);
+		Backend<IOException> back = 
+			new BufferedWriterBackend(new SlowWriter(sinkNanos), 80);
+		if (async) {
+			back = new AsyncBackend<IOException>(back, 1 << 20, 
+					AsyncBackend.Overflow.BLOCK,
+					Executors.defaultThreadFactory());
+		}
+		layouter = new Layouter<IOException>(back, 2);
+		layouter.beginC(0);
+	}
+
+	@TearDown
+	public void tearDown() throws IOException {
+		layouter.end().close();
+	}
+
+	@Benchmark
+	public void step() throws IOException {
+		layouter.beginI().print(words[i++ & 1023]).brk(1, 0)
+		.print(":").end().brk(1, 0);
+	}
+}
@@ -0,0 +1,177 @@
+//This file is part of the Java™ Pretty Printer Library (JPPlib)
+//Copyright (c) 2009, Martin Giese
+//All rights reserved.
+//
+//Redistribution and use in source and binary forms, with or without 
+//modification, are permitted provided that the following conditions are met:
+// 
+// * Redistributions of source code must retain the above copyright 
+//   notice, this list of conditions and the following disclaimer.
+// * Redistributions in binary form must reproduce the above copyright 
+//   notice, this list of conditions and the following disclaimer in the 
+//   documentation and/or other materials provided with the distribution.
+// * Neither the name of the author nor the names of his contributors 
+//   may be used to endorse or promote products derived from this 
+//   software without specific prior written permission.
+// 
+//THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+//AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE 
+//IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+//ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE 
+//LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+//CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF 
+//SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+//INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+//CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+//ARISING IN ANY WAY OUT OF THE USE OF THIS  SOFTWARE, EVEN IF ADVISED OF 
+//THE POSSIBILITY OF SUCH DAMAGE.
+
+package de.uka.ilkd.pp.benchmarks;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import de.uka.ilkd.pp.demo.datapp.Tree;
+
+/** Synthetic inputs for the benchmarks.  All inputs are generated from
+ * a fixed seed, so every run of a benchmark sees the same data.
+ */
+final class Inputs {
+
+	/** The seed for all generated inputs */
+	private static final long SEED = 0x6A70706CL;
+
+	private Inputs() {
+	}
+
+	/** A fresh random number generator with the fixed seed */
+	static Random random() {
+		return new Random(SEED);
+	}
+
+	/** A word of 1 to 10 lower case letters */
+	static String word(Random r) {
+		int n = 1 + r.nextInt(10);
+		char[] c = new char[n];
+		for (int i = 0; i < n; i++) {
+			c[i] = (char) ('a' + r.nextInt(26));
+		}
+		return new String(c);
+	}
+
+	/** <code>n</code> words */
+	static String[] words(int n) {
+		Random r = random();
+		String[] result = new String[n];
+		for (int i = 0; i < n; i++) {
+			result[i] = word(r);
+		}
+		return result;
+	}
+
+	/** <code>n</code> words, a quarter of which contain a non-ASCII
+	 * letter, and some of these a character outside the BMP */
+	static String[] unicodeWords(int n) {
+		Random r = random();
+		String[] nonAscii = { "\u00e4", "\u03bb", "\u20ac", "\ud83d\ude00" };
+		String[] result = new String[n];
+		for (int i = 0; i < n; i++) {
+			result[i] = r.nextInt(4) == 0
+				? word(r) + nonAscii[r.nextInt(nonAscii.length)] 
+				: word(r);
+		}
+		return result;
+	}
+
+	/** A list of <code>n</code> Integers and Strings */
+	static List<Object> list(int n) {
+		Random r = random();
+		List<Object> result = new ArrayList<Object>(n);
+		for (int i = 0; i < n; i++) {
+			if (r.nextBoolean()) {
+				result.add(r.nextInt());
+			} else {
+				result.add(word(r));
+			}
+		}
+		return result;
+	}
+
+	/** A map from <code>n</code> words to small lists */
+	static Map<String, Object> map(int n) {
+		Random r = random();
+		Map<String, Object> result = new LinkedHashMap<String, Object>();
+		for (int i = 0; i < n; i++) {
+			List<Integer> value = new ArrayList<Integer>();
+			for (int j = r.nextInt(5); j > 0; j--) {
+				value.add(r.nextInt(1000));
+			}
+			result.put(word(r) + i, value);
+		}
+		return result;
+	}
+
+	/** An array of <code>n</code> ints */
+	static int[] ints(int n) {
+		Random r = random();
+		int[] result = new int[n];
+		for (int i = 0; i < n; i++) {
+			result[i] = r.nextInt();
+		}
+		return result;
+	}
+
+	/** A tree with the given arity and depth, labelled like the tree in
+	 * the DataPrettyPrinter demo. */
+	static Tree<String> tree(int arity, int depth) {
+		return tree("root", arity, depth);
+	}
+
+	private static Tree<String> tree(String prefix, int arity, int depth) {
+		Tree<String> result = new Tree<String>(prefix);
+		if (depth > 0) {
+			for (int j = 0; j < arity; j++) {
+				result.addChild(tree(prefix + "." + (j + 1), arity, depth - 1));
+			}
+		}
+		return result;
+	}
+
+	/** An XML document with <code>n</code> elements, some with
+	 * attributes, some with text content, nested up to 6 deep. */
+	static String xml(int n) {
+		Random r = random();
+		StringBuilder sb = new StringBuilder();
+		sb.append("<?xml version=\"1.0\"?>\n<doc>");
+		int depth = 0;
+		for (int i = 0; i < n; i++) {
+			sb.append("<e").append(i % 7);
+			if (r.nextInt(3) == 0) {
+				sb.append(" id=\"").append(i).append("\" name=\"")
+				  .append(word(r)).append('"');
+			}
+			sb.append('>');
+			if (r.nextBoolean()) {
+				for (int j = r.nextInt(12); j >= 0; j--) {
+					sb.append(word(r)).append(' ');
+				}
+			}
+			sb.append("</e").append(i % 7).append('>');
+			if (depth < 6 && r.nextInt(3) == 0) {
+				depth++;
+				sb.append("<n>");
+			} else if (depth > 0 && r.nextInt(3) == 0) {
+				depth--;
+				sb.append("</n>");
+			}
+		}
+		while (depth-- > 0) {
+			sb.append("</n>");
+		}
+		sb.append("</doc>\n");
+		return sb.toString();
+	}
+}
@@ -0,0 +1,95 @@
+//This file is part of the Java™ Pretty Printer Library (JPPlib)
+//Copyright (c) 2009, Martin Giese
+//All rights reserved.
+//
+//Redistribution and use in source and binary forms, with or without 
+//modification, are permitted provided that the following conditions are met:
+// 
+// * Redistributions of source code must retain the above copyright 
+//   notice, this list of conditions and the following disclaimer.
+// * Redistributions in binary form must reproduce the above copyright 
+//   notice, this list of conditions and the following disclaimer in the 
+//   documentation and/or other materials provided with the distribution.
+// * Neither the name of the author nor the names of his contributors 
+//   may be used to endorse or promote products derived from this 
+//   software without specific prior written permission.
+// 
+//THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+//AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE 
+//IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+//ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE 
+//LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+//CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF 
+//SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+//INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+//CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+//ARISING IN ANY WAY OUT OF THE USE OF THIS  SOFTWARE, EVEN IF ADVISED OF 
+//THE POSSIBILITY OF SUCH DAMAGE.
+
+package de.uka.ilkd.pp.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.uka.ilkd.pp.Layouter;
+import de.uka.ilkd.pp.NoExceptions;
+import de.uka.ilkd.pp.StringBackend;
+
+/** Lay out deeply nested blocks.  Every level opens a block, prints
+ * a parenthesis and a break, so all blocks are on the delimiter stack
+ * of the Layouter and on the indentation stack of its Printer at the 
+ * same time.  Blocks are indented relative to the surrounding block,
+ * so the output stays linear in the nesting depth.  For comparison,
+ * <code>wideBlocks</code> lays out the same number of blocks side by
+ * side in one enclosing block.
+ *
+ * <p>Run against an older release of the core module to compare
+ * the cost of the block stacks at a given depth.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+public class NestingBenchmark {
+
+	@Param({"10", "100", "1000", "10000", "100000"})
+	public int depth;
+
+	@Benchmark
+	public String nestedBlocks() {
+		StringBackend back = new StringBackend(80);
+		Layouter<NoExceptions> l = new Layouter<NoExceptions>(back, 2);
+		for (int i = 0; i < depth; i++) {
+			l.beginCInd(0).print("(").brk(0, 0);
+		}
+		for (int i = 0; i < depth; i++) {
+			l.print(")").end();
+		}
+		l.close();
+		return back.getString();
+	}
+
+	@Benchmark
+	public String wideBlocks() {
+		StringBackend back = new StringBackend(80);
+		Layouter<NoExceptions> l = new Layouter<NoExceptions>(back, 2);
+		l.beginC(0);
+		for (int i = 0; i < depth; i++) {
+			l.beginCInd(0).print("(").brk(0, 0).print(")").end().brk(0, 0);
+		}
+		l.end().close();
+		return back.getString();
+	}
+}
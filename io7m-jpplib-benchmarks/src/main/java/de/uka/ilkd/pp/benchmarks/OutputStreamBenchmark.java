@@ -0,0 +1,124 @@
+//This file is part of the Java™ Pretty Printer Library (JPPlib)
+//Copyright (c) 2009, Martin Giese
+//All rights reserved.
+//
+//Redistribution and use in source and binary forms, with or without 
+//modification, are permitted provided that the following conditions are met:
+// 
+// * Redistributions of source code must retain the above copyright 
+//   notice, this list of conditions and the following disclaimer.
+// * Redistributions in binary form must reproduce the above copyright 
+//   notice, this list of conditions and the following disclaimer in the 
+//   documentation and/or other materials provided with the distribution.
+// * Neither the name of the author nor the names of his contributors 
+//   may be used to endorse or promote products derived from this 
+//   software without specific prior written permission.
+// 
+//THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+//AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE 
+//IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+//ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE 
+//LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+//CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF 
+//SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+//INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+//CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+//ARISING IN ANY WAY OUT OF THE USE OF THIS  SOFTWARE, EVEN IF ADVISED OF 
+//THE POSSIBILITY OF SUCH DAMAGE.
+
+package de.uka.ilkd.pp.benchmarks;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.uka.ilkd.pp.Backend;
+import de.uka.ilkd.pp.BufferedWriterBackend;
+import de.uka.ilkd.pp.Layouter;
+import de.uka.ilkd.pp.OutputStreamBackend;
+import de.uka.ilkd.pp.WriterBackend;
+
+/** Encode the same layout as UTF-8 through an OutputStreamWriter, and
+ * directly with an {@link OutputStreamBackend}.  The bytes are counted
+ * and discarded.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+public class OutputStreamBenchmark {
+
+	/** An OutputStream counting and discarding its input */
+	static class CountingStream extends OutputStream {
+		long count = 0;
+
+		public void write(int b) {
+			count++;
+		}
+
+		public void write(byte[] b, int off, int len) {
+			count += len;
+		}
+	}
+
+	@Param({"10000"})
+	public int size;
+
+	@Param({"false", "true"})
+	public boolean unicode;
+
+	private String[] words;
+
+	@Setup
+	public void setUp() {
+		words = unicode ? Inputs.unicodeWords(size) : Inputs.words(size);
+	}
+
+	private void layOut(Backend<IOException> back) throws IOException {
+		Layouter<IOException> l = new Layouter<IOException>(back, 2);
+		l.beginC(0);
+		for (int i = 0; i < words.length; i++) {
+			l.beginI().print(words[i]).brk(1, 0).print(":").end().brk(1, 0);
+		}
+		l.end().close();
+	}
+
+	@Benchmark
+	public long writerBackend() throws IOException {
+		CountingStream out = new CountingStream();
+		layOut(new WriterBackend(
+				new OutputStreamWriter(out, StandardCharsets.UTF_8), 80));
+		return out.count;
+	}
+
+	@Benchmark
+	public long bufferedWriterBackend() throws IOException {
+		CountingStream out = new CountingStream();
+		layOut(new BufferedWriterBackend(
+				new OutputStreamWriter(out, StandardCharsets.UTF_8), 80));
+		return out.count;
+	}
+
+	@Benchmark
+	public long outputStreamBackend() throws IOException {
+		CountingStream out = new CountingStream();
+		layOut(new OutputStreamBackend(out, 80));
+		return out.count;
+	}
+}
@@ -0,0 +1,116 @@
+//This file is part of the Java™ Pretty Printer Library (JPPlib)
+//Copyright (c) 2009, Martin Giese
+//All rights reserved.
+//
+//Redistribution and use in source and binary forms, with or without 
+//modification, are permitted provided that the following conditions are met:
+// 
+// * Redistributions of source code must retain the above copyright 
+//   notice, this list of conditions and the following disclaimer.
+// * Redistributions in binary form must reproduce the above copyright 
+//   notice, this list of conditions and the following disclaimer in the 
+//   documentation and/or other materials provided with the distribution.
+// * Neither the name of the author nor the names of his contributors 
+//   may be used to endorse or promote products derived from this 
+//   software without specific prior written permission.
+// 
+//THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+//AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE 
+//IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+//ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE 
+//LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+//CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF 
+//SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+//INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+//CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+//ARISING IN ANY WAY OUT OF THE USE OF THIS  SOFTWARE, EVEN IF ADVISED OF 
+//THE POSSIBILITY OF SUCH DAMAGE.
+
+package de.uka.ilkd.pp.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.uka.ilkd.pp.Layouter;
+import de.uka.ilkd.pp.NoExceptions;
+import de.uka.ilkd.pp.StringBackend;
+
+/** Filling paragraphs of text, as the XML demos do for text nodes:
+ * splitting the text with a regular expression and printing each word
+ * with a break before it, compared to {@link Layouter#printWords}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+public class ParagraphBenchmark {
+
+	@Param({"20", "80", "1000"})
+	public int width;
+
+	@Param({"10000"})
+	public int size;
+
+	/** Paragraphs of 50 words each */
+	private String[] paragraphs;
+
+	@Setup
+	public void setUp() {
+		String[] words = Inputs.words(size);
+		paragraphs = new String[(words.length + 49) / 50];
+		for (int p = 0; p < paragraphs.length; p++) {
+			StringBuilder sb = new StringBuilder("\n  ");
+			for (int i = 50 * p; i < Math.min(words.length, 50 * p + 50); i++) {
+				sb.append(words[i]).append(i % 10 == 9 ? "\n  " : " ");
+			}
+			paragraphs[p] = sb.toString();
+		}
+	}
+
+	@Benchmark
+	public String split() {
+		StringBackend back = new StringBackend(width);
+		Layouter<NoExceptions> l = new Layouter<NoExceptions>(back, 2);
+		l.beginC(2);
+		for (String paragraph : paragraphs) {
+			String[] words = paragraph.trim().split("\\s+");
+			l.brk(1, 0).beginIInd(0);
+			boolean brk = false;
+			for (String word : words) {
+				if (brk) {
+					l.brk(1, 0);
+				}
+				l.print(word);
+				brk = true;
+			}
+			l.end();
+		}
+		l.end().close();
+		return back.getString();
+	}
+
+	@Benchmark
+	public String printWords() {
+		StringBackend back = new StringBackend(width);
+		Layouter<NoExceptions> l = new Layouter<NoExceptions>(back, 2);
+		l.beginC(2);
+		for (String paragraph : paragraphs) {
+			l.brk(1, 0).beginIInd(0).printWords(paragraph).end();
+		}
+		l.end().close();
+		return back.getString();
+	}
+}
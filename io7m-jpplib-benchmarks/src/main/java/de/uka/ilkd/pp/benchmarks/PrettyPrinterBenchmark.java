@@ -0,0 +1,118 @@
+//This file is part of the Java™ Pretty Printer Library (JPPlib)
+//Copyright (c) 2009, Martin Giese
+//All rights reserved.
+//
+//Redistribution and use in source and binary forms, with or without 
+//modification, are permitted provided that the following conditions are met:
+// 
+// * Redistributions of source code must retain the above copyright 
+//   notice, this list of conditions and the following disclaimer.
+// * Redistributions in binary form must reproduce the above copyright 
+//   notice, this list of conditions and the following disclaimer in the 
+//   documentation and/or other materials provided with the distribution.
+// * Neither the name of the author nor the names of his contributors 
+//   may be used to endorse or promote products derived from this 
+//   software without specific prior written permission.
+// 
+//THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+//AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE 
+//IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+//ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE 
+//LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+//CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF 
+//SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+//INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+//CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+//ARISING IN ANY WAY OUT OF THE USE OF THIS  SOFTWARE, EVEN IF ADVISED OF 
+//THE POSSIBILITY OF SUCH DAMAGE.
+
+package de.uka.ilkd.pp.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.uka.ilkd.pp.DataLayouter;
+import de.uka.ilkd.pp.NoExceptions;
+import de.uka.ilkd.pp.PrettyPrinter;
+import de.uka.ilkd.pp.StringBackend;
+
+/** Render small objects through one shared {@link PrettyPrinter} from
+ * several threads at once.  With the layouter pool free of locks and
+ * shared counters, the throughput of the <code>pooled*</code> methods
+ * should grow linearly with the number of threads, up to the number 
+ * of cores.  <code>fresh</code> sets up a new DataLayouter for every
+ * object, as callers had to before the pool existed.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+public class PrettyPrinterBenchmark {
+
+	private PrettyPrinter pp;
+
+	private Object data;
+
+	@Setup
+	public void setUp() {
+		pp = new PrettyPrinter();
+		List<Object> l = new ArrayList<Object>();
+		for (int i = 0; i < 8; i++) {
+			Map<String, Object> m = new TreeMap<String, Object>();
+			m.put("id", i);
+			m.put("name", "item" + i);
+			m.put("tags", new String[] { "a", "bb", "ccc" });
+			l.add(m);
+		}
+		data = l;
+	}
+
+	@Benchmark
+	@Threads(1)
+	public String pooled1() {
+		return pp.render(data, 80);
+	}
+
+	@Benchmark
+	@Threads(2)
+	public String pooled2() {
+		return pp.render(data, 80);
+	}
+
+	@Benchmark
+	@Threads(4)
+	public String pooled4() {
+		return pp.render(data, 80);
+	}
+
+	@Benchmark
+	@Threads(Threads.MAX)
+	public String pooledMax() {
+		return pp.render(data, 80);
+	}
+
+	@Benchmark
+	@Threads(Threads.MAX)
+	public String fresh() {
+		StringBackend back = new StringBackend(80);
+		new DataLayouter<NoExceptions>(back, 2).print(data).close();
+		return back.getString();
+	}
+}
@@ -0,0 +1,459 @@
+//This file is part of the Java™ Pretty Printer Library (JPPlib)
+//Copyright (c) 2009, Martin Giese
+//All rights reserved.
+//
+//Redistribution and use in source and binary forms, with or without 
+//modification, are permitted provided that the following conditions are met:
+// 
+// * Redistributions of source code must retain the above copyright 
+//   notice, this list of conditions and the following disclaimer.
+// * Redistributions in binary form must reproduce the above copyright 
+//   notice, this list of conditions and the following disclaimer in the 
+//   documentation and/or other materials provided with the distribution.
+// * Neither the name of the author nor the names of his contributors 
+//   may be used to endorse or promote products derived from this 
+//   software without specific prior written permission.
+// 
+//THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+//AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE 
+//IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+//ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE 
+//LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+//CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF 
+//SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+//INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+//CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+//ARISING IN ANY WAY OUT OF THE USE OF THIS  SOFTWARE, EVEN IF ADVISED OF 
+//THE POSSIBILITY OF SUCH DAMAGE.
+
+package de.uka.ilkd.pp;
+
+import java.util.Arrays;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/** A {@link Backend} which hands its output to another backend on a
+ * thread of its own, so that the thread producing the layout does not
+ * wait for slow output.  Text, spaces and newlines are copied into a 
+ * bounded ring buffer, which is drained by a writer thread that sends 
+ * them on to the wrapped backend.  The writer thread is created by a 
+ * ThreadFactory, which might for instance create virtual threads.
+ * An idle writer thread looks for output every millisecond, and is only
+ * woken up early when a quarter of the ring buffer is in use, so that
+ * most calls do not have to wake it.
+ *
+ * <p>When the ring buffer is full, the producing thread either waits 
+ * for the writer to catch up, or drops the output, depending on the
+ * {@link Overflow} policy.  {@link #flush()}, {@link #mark(Object)} and
+ * {@link #close()} wait until all output has been handed on, and then
+ * call the wrapped backend directly, so marks are expensive.
+ *
+ * <p>An exception thrown by the wrapped backend on the writer thread is
+ * kept, and all further output is discarded.  The exception is thrown 
+ * by the next call to this backend, and by {@link #close()}.
+ *
+ * <p>Only one thread may use this backend, apart from the writer 
+ * thread.  {@link #measure(String)} and {@link #lineWidth()} are 
+ * passed on to the wrapped backend on the calling thread, so they must
+ * be safe to call while the writer thread is printing.
+ *
+ * @param <Exc> The type of exceptions that might be thrown by the 
+ *        wrapped backend.
+ * @since 0.8.0
+ */
+
+public class AsyncBackend<Exc extends Exception> 
+	implements LineBackend<Exc> 
+{
+
+	/** What to do with output that does not fit in the ring buffer */
+	public enum Overflow {
+		/** Wait until the writer thread has made room */
+		BLOCK, 
+		/** Discard the output, and count the discarded characters.
+		 * Use this only if incomplete output is acceptable, e.g. for
+		 * logging. */
+		DROP
+	}
+
+	/** The default capacity of the ring buffer in characters */
+	public static final int DEFAULT_CAPACITY = 1 << 16;
+
+	/** How long an idle writer thread sleeps before looking for output
+	 * again, unless it is woken up */
+	private static final long POLL_NANOS = 1000000;
+
+	/** The backend output is handed on to */
+	private final Backend<Exc> back;
+
+	private final Overflow overflow;
+
+	/** The ring buffer.  Contains text and <code>'\n'</code> for 
+	 * newlines. */
+	private final char[] ring;
+
+	/** The number of characters in the ring above which an idle writer
+	 * is woken up.  Below that, it finds the output when it next polls,
+	 * so that most calls need not wake it up. */
+	private final int wakeUpThreshold;
+
+	/** The number of characters ever taken out of the ring buffer by
+	 * the writer thread */
+	private volatile long head = 0;
+
+	/** The number of characters ever put into the ring buffer */
+	private volatile long tail = 0;
+
+	/** The number of characters dropped */
+	private volatile long dropped = 0;
+
+	/** Set when the writer thread should stop once the ring is empty */
+	private volatile boolean closed = false;
+
+	/** The first exception thrown by the backend on the writer thread */
+	private volatile Throwable failure;
+
+	private final ReentrantLock lock = new ReentrantLock();
+
+	/** Signalled when characters have been added */
+	private final Condition notEmpty = lock.newCondition();
+
+	/** Signalled when characters have been taken out */
+	private final Condition notFull = lock.newCondition();
+
+	/** Whether the writer thread is waiting, or about to wait, 
+	 * on <code>notEmpty</code> */
+	private volatile boolean writerWaiting = false;
+
+	/** Whether the producing thread is waiting, or about to wait, 
+	 * on <code>notFull</code> */
+	private volatile boolean producerWaiting = false;
+
+	private final Thread writer;
+
+	/** Create an asynchronous backend handing output on to 
+	 * <code>back</code>, using a daemon thread, a ring buffer of 
+	 * {@link #DEFAULT_CAPACITY} characters, and blocking when it is 
+	 * full. */
+	public AsyncBackend(Backend<Exc> back) {
+		this(back, DEFAULT_CAPACITY, Overflow.BLOCK, new ThreadFactory() {
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "jpplib-async-backend");
+				t.setDaemon(true);
+				return t;
+			}
+		});
+	}
+
+	/** Create an asynchronous backend handing output on to 
+	 * <code>back</code>.  
+	 * @param capacity the size of the ring buffer in characters
+	 * @param overflow what to do when the ring buffer is full
+	 * @param threads creates the writer thread, which is started 
+	 *        immediately
+	 */
+	public AsyncBackend(Backend<Exc> back, int capacity, 
+			Overflow overflow, ThreadFactory threads) {
+		if (capacity <= 0) {
+			throw new IllegalArgumentException(
+					"capacity must be positive");
+		}
+		this.back = back;
+		this.overflow = overflow;
+		this.ring = new char[capacity];
+		this.wakeUpThreshold = capacity / 4;
+		this.writer = threads.newThread(new Runnable() {
+			public void run() {
+				drain();
+			}
+		});
+		writer.start();
+	}
+
+	/** Append a String <code>s</code> to the output.  <code>s</code> 
+	 * contains no newlines. */
+	public void print(String s) throws Exc {
+		checkFailure();
+		int n = s.length();
+		int i = 0;
+		while (i < n) {
+			int k = reserve(n - i);
+			if (k == 0) {
+				return;
+			}
+			int start = (int) (tail % ring.length);
+			k = Math.min(k, ring.length - start);
+			s.getChars(i, i + k, ring, start);
+			i += k;
+			publish(k);
+		}
+	}
+
+	/** Append the characters <code>buf[offset..offset+length-1]</code>
+	 * to the output. */
+	public void print(char[] buf, int offset, int length) throws Exc {
+		checkFailure();
+		put(buf, offset, length);
+	}
+
+	/** Append the characters <code>buf[offset..offset+length-1]</code>
+	 * and a newline to the output. */
+	public void printLine(char[] buf, int offset, int length) throws Exc {
+		checkFailure();
+		put(buf, offset, length);
+		putRepeated('\n', 1);
+	}
+
+	/** Start a new line. */
+	public void newLine() throws Exc {
+		checkFailure();
+		putRepeated('\n', 1);
+	}
+
+	/** Append <code>n</code> spaces to the output. */
+	public void writeSpaces(int n) throws Exc {
+		checkFailure();
+		putRepeated(' ', n);
+	}
+
+	/** Wait until all output has been handed on, and flush the wrapped
+	 * backend. */
+	public void flush() throws Exc {
+		awaitDrained();
+		checkFailure();
+		back.flush();
+	}
+
+	/** Wait until all output has been handed on, and record a 
+	 * <code>mark()</code> call with the wrapped backend. */
+	public void mark(Object o) throws Exc {
+		awaitDrained();
+		checkFailure();
+		back.mark(o);
+	}
+
+	/** Wait until all output has been handed on, stop the writer thread
+	 * and close the wrapped backend.  If the wrapped backend threw an 
+	 * exception on the writer thread, it is thrown here. */
+	public void close() throws Exc {
+		if (closed) {
+			return;
+		}
+		awaitDrained();
+		closed = true;
+		signal(notEmpty);
+		boolean interrupted = false;
+		while (writer.isAlive()) {
+			try {
+				writer.join();
+			} catch (InterruptedException e) {
+				interrupted = true;
+			}
+		}
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+		try {
+			checkFailure();
+		} finally {
+			back.close();
+		}
+	}
+
+	/** Returns the number of characters that were dropped because the
+	 * ring buffer was full.  Always 0 with {@link Overflow#BLOCK}. */
+	public long dropped() {
+		return dropped;
+	}
+
+	/** Returns the available space per line of the wrapped backend */
+	public int lineWidth() {
+		return back.lineWidth();
+	}
+
+	/** Returns the tab width of the wrapped backend */
+	public int tabWidth() {
+		return back.tabWidth();
+	}
+
+	/** Returns the space required by the wrapped backend to print the 
+	 * String <code>s</code> */
+	public int measure(String s) {
+		return back.measure(s);
+	}
+
+	/** Returns the space required by the wrapped backend to print the 
+	 * given characters */
+	public int measure(char[] buf, int offset, int length) {
+		return back.measure(buf, offset, length);
+	}
+
+	/** Copy <code>buf[offset..offset+length-1]</code> into the ring */
+	private void put(char[] buf, int offset, int length) {
+		while (length > 0) {
+			int k = reserve(length);
+			if (k == 0) {
+				return;
+			}
+			int start = (int) (tail % ring.length);
+			k = Math.min(k, ring.length - start);
+			System.arraycopy(buf, offset, ring, start, k);
+			offset += k;
+			length -= k;
+			publish(k);
+		}
+	}
+
+	/** Put <code>n</code> copies of <code>c</code> into the ring */
+	private void putRepeated(char c, int n) {
+		while (n > 0) {
+			int k = reserve(n);
+			if (k == 0) {
+				return;
+			}
+			int start = (int) (tail % ring.length);
+			k = Math.min(k, ring.length - start);
+			Arrays.fill(ring, start, start + k, c);
+			n -= k;
+			publish(k);
+		}
+	}
+
+	/** Return how many of <code>n</code> characters can be put into the
+	 * ring now, waiting for room if the policy is to block.  With the 
+	 * policy to drop, the characters that do not fit are counted as 
+	 * dropped, and 0 is returned. */
+	private int reserve(int n) {
+		int free = ring.length - (int) (tail - head);
+		if (free > 0 && (free >= n || overflow == Overflow.BLOCK)) {
+			return Math.min(n, free);
+		}
+		if (overflow == Overflow.DROP) {
+			dropped += n;
+			return 0;
+		}
+		lock.lock();
+		try {
+			notEmpty.signal();
+			producerWaiting = true;
+			while (tail - head == ring.length && failure == null) {
+				notFull.awaitUninterruptibly();
+			}
+			producerWaiting = false;
+		} finally {
+			lock.unlock();
+		}
+		return Math.min(n, ring.length - (int) (tail - head));
+	}
+
+	/** Make <code>n</code> more characters visible to the writer */
+	private void publish(int n) {
+		tail += n;
+		if (writerWaiting && tail - head > wakeUpThreshold) {
+			signal(notEmpty);
+		}
+	}
+
+	/** Wait until the writer thread has taken all characters out of the
+	 * ring and handed them on. */
+	private void awaitDrained() {
+		if (head == tail) {
+			return;
+		}
+		lock.lock();
+		try {
+			notEmpty.signal();
+			producerWaiting = true;
+			while (head != tail) {
+				notFull.awaitUninterruptibly();
+			}
+			producerWaiting = false;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private void signal(Condition c) {
+		lock.lock();
+		try {
+			c.signal();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/** Throw the exception thrown on the writer thread, if any */
+	@SuppressWarnings("unchecked")
+	private void checkFailure() throws Exc {
+		Throwable t = failure;
+		if (t == null) {
+			return;
+		}
+		if (t instanceof RuntimeException) {
+			throw (RuntimeException) t;
+		}
+		if (t instanceof Error) {
+			throw (Error) t;
+		}
+		throw (Exc) t;
+	}
+
+	/** The writer thread's loop */
+	private void drain() {
+		while (true) {
+			long h = head;
+			long t = tail;
+			if (h == t) {
+				if (closed) {
+					return;
+				}
+				lock.lock();
+				try {
+					writerWaiting = true;
+					if (head == tail && !closed) {
+						notEmpty.awaitNanos(POLL_NANOS);
+					}
+				} catch (InterruptedException e) {
+					// look for output, and stop when closed
+				} finally {
+					writerWaiting = false;
+					lock.unlock();
+				}
+				continue;
+			}
+			int start = (int) (h % ring.length);
+			int n = (int) Math.min(t - h, ring.length - start);
+			if (failure == null) {
+				try {
+					handOn(start, n);
+				} catch (Throwable e) {
+					failure = e;
+				}
+			}
+			head = h + n;
+			if (producerWaiting) {
+				signal(notFull);
+			}
+		}
+	}
+
+	/** Send <code>ring[start..start+n-1]</code> to the wrapped backend,
+	 * turning <code>'\n'</code> into calls to newLine() */
+	private void handOn(int start, int n) throws Exc {
+		int end = start + n;
+		int from = start;
+		for (int i = start; i < end; i++) {
+			if (ring[i] == '\n') {
+				if (i > from) {
+					back.print(ring, from, i - from);
+				}
+				back.newLine();
+				from = i + 1;
+			}
+		}
+		if (end > from) {
+			back.print(ring, from, end - from);
+		}
+	}
+}
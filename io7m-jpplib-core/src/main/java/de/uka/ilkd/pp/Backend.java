@@ -67,9 +67,38 @@ public interface Backend<Exc extends Exception> {
      * contains no newlines. */
     void print(String s) throws Exc;
 
+    /** Append the characters <code>buf[offset..offset+length-1]</code>
+     * to the output.  They contain no newlines.  The characters must
+     * not be retained after the call returns, as <code>buf</code> is
+     * reused by the caller.
+     *
+     * <p>The default implementation passes a new String to
+     * {@link #print(String)}.  Implementations should override it to
+     * avoid that.
+     *
+     * @since 0.8.0
+     */
+    default void print(char[] buf, int offset, int length) throws Exc {
+        print(new String(buf, offset, length));
+    }
+
     /** Start a new line. */
     void newLine() throws Exc;
 
+    /** Append <code>n</code> spaces to the output.  Called for 
+     * indentation, and for breaks that are not taken, once the text
+     * following the spaces is known.  Spaces at the end of a line are
+     * not written at all.
+     *
+     * <p>The default implementation prints cached Strings through
+     * {@link #print(String)}.  
+     *
+     * @since 0.8.0
+     */
+    default void writeSpaces(int n) throws Exc {
+        Spaces.print(this, n);
+    }
+
     /** Closes this backend */
     void close() throws Exc;
 
@@ -82,7 +111,32 @@ public interface Backend<Exc extends Exception> {
     /** Returns the available space per line */
     int lineWidth();
 
+    /** Returns the width of a tab character, if the indentation at the
+     * start of a line should be written as tabs followed by fewer than
+     * that many spaces, or 0 if it should be written as spaces only.
+     * Tab stops are taken to be at every multiple of this width.  This
+     * only changes the characters written; the layout is the same.
+     *
+     * <p>The default implementation returns 0.
+     *
+     * @since 0.8.0
+     */
+    default int tabWidth() {
+        return 0;
+    }
+
     /** Returns the space required to print the String <code>s</code> */
     int measure(String s);
 
+    /** Returns the space required to print the characters
+     * <code>buf[offset..offset+length-1]</code>.  This must agree with
+     * {@link #measure(String)} for a String with the same characters,
+     * which is what the default implementation uses.
+     *
+     * @since 0.8.0
+     */
+    default int measure(char[] buf, int offset, int length) {
+        return measure(new String(buf, offset, length));
+    }
+
 }
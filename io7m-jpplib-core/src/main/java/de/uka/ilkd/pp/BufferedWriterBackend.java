@@ -0,0 +1,159 @@
+//This file is part of the Java™ Pretty Printer Library (JPPlib)
+//Copyright (c) 2009, Martin Giese
+//All rights reserved.
+//
+//Redistribution and use in source and binary forms, with or without 
+//modification, are permitted provided that the following conditions are met:
+// 
+// * Redistributions of source code must retain the above copyright 
+//   notice, this list of conditions and the following disclaimer.
+// * Redistributions in binary form must reproduce the above copyright 
+//   notice, this list of conditions and the following disclaimer in the 
+//   documentation and/or other materials provided with the distribution.
+// * Neither the name of the author nor the names of his contributors 
+//   may be used to endorse or promote products derived from this 
+//   software without specific prior written permission.
+// 
+//THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+//AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE 
+//IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+//ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE 
+//LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+//CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF 
+//SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+//INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+//CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+//ARISING IN ANY WAY OUT OF THE USE OF THIS  SOFTWARE, EVEN IF ADVISED OF 
+//THE POSSIBILITY OF SUCH DAMAGE.
+
+package de.uka.ilkd.pp;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/** A {@link WriterBackend} which collects output in a 
+ * <code>char</code> array of its own, and writes it to the 
+ * java.io.Writer in large chunks.  There is no need to wrap the Writer
+ * in a BufferedWriter.  Output is written to the Writer when the buffer
+ * is full, and on {@link #flush()} and {@link #close()}.
+ * @since 0.8.0
+ */
+
+public class BufferedWriterBackend extends WriterBackend {
+
+    /** The default size of the buffer */
+    public static final int DEFAULT_BUFFER_SIZE = 8192;
+
+    /** The output not yet written to <code>out</code> */
+    private final char[] buf;
+
+    /** The number of characters in <code>buf</code> */
+    private int length = 0;
+
+    public BufferedWriterBackend(Writer w,int lineWidth) {
+	this(w, lineWidth, DEFAULT_BUFFER_SIZE);
+    }
+
+    /** Create a backend writing to <code>w</code> through a buffer of
+     * <code>bufferSize</code> characters. */
+    public BufferedWriterBackend(Writer w,int lineWidth,int bufferSize) {
+	super(w, lineWidth);
+	if (bufferSize <= 0) {
+	    throw new IllegalArgumentException("bufferSize must be positive");
+	}
+	this.buf = new char[bufferSize];
+    }
+
+    /** Append a String <code>s</code> to the output.  <code>s</code> 
+     * contains no newlines. */
+    public void print(String s) throws IOException {
+	int n = s.length();
+	if (n > buf.length - length) {
+	    writeBuffer();
+	    if (n > buf.length) {
+		out.write(s);
+		addCount(n);
+		return;
+	    }
+	}
+	s.getChars(0, n, buf, length);
+	length+=n;
+	addCount(n);
+    }
+
+    /** Append the characters <code>cs[offset..offset+n-1]</code>
+     * to the output. */
+    public void print(char[] cs, int offset, int n) throws IOException {
+	if (!acceptsLines()) {
+	    print(new String(cs, offset, n));
+	    return;
+	}
+	if (n > buf.length - length) {
+	    writeBuffer();
+	    if (n > buf.length) {
+		out.write(cs, offset, n);
+		addCount(n);
+		return;
+	    }
+	}
+	System.arraycopy(cs, offset, buf, length, n);
+	length+=n;
+	addCount(n);
+    }
+
+    /** Append the characters <code>cs[offset..offset+n-1]</code>
+     * and a newline to the output. */
+    public void printLine(char[] cs, int offset, int n) 
+	throws IOException {
+	print(cs, offset, n);
+	newLine();
+    }
+
+    /** Returns <code>true</code>, as this class writes lines, 
+     * character ranges and spaces itself.  Subclasses that intercept
+     * the output in {@link #print(String)} and {@link #newLine()} 
+     * should override this to return <code>false</code>.
+     */
+    public boolean acceptsLines() {
+	return true;
+    }
+
+    /** Start a new line. */
+    public void newLine() throws IOException {
+	if (length == buf.length) {
+	    writeBuffer();
+	}
+	buf[length++] = '\n';
+	addCount(1);
+    }
+
+    /** Append <code>n</code> spaces to the output. */
+    public void writeSpaces(int n) throws IOException {
+	while (n > Spaces.NR_SPACES) {
+	    print(Spaces.CHARS, 0, Spaces.NR_SPACES);
+	    n -= Spaces.NR_SPACES;
+	}
+	print(Spaces.CHARS, 0, n);
+    }
+
+    /** Writes the buffered output and closes this backend */
+    public void close() throws IOException {
+	writeBuffer();
+	out.close();
+    }
+
+    /** Writes the buffered output and flushes the Writer */
+    public void flush() throws IOException {
+	writeBuffer();
+	out.flush();
+    }
+
+    /** Write the contents of the buffer to <code>out</code> */
+    private void writeBuffer() throws IOException {
+	if (length > 0) {
+	    out.write(buf, 0, length);
+	    length = 0;
+	}
+    }
+
+}
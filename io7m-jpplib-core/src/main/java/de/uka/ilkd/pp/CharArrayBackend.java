@@ -0,0 +1,279 @@
+//This file is part of the Java™ Pretty Printer Library (JPPlib)
+//Copyright (c) 2009, Martin Giese
+//All rights reserved.
+//
+//Redistribution and use in source and binary forms, with or without 
+//modification, are permitted provided that the following conditions are met:
+// 
+// * Redistributions of source code must retain the above copyright 
+//   notice, this list of conditions and the following disclaimer.
+// * Redistributions in binary form must reproduce the above copyright 
+//   notice, this list of conditions and the following disclaimer in the 
+//   documentation and/or other materials provided with the distribution.
+// * Neither the name of the author nor the names of his contributors 
+//   may be used to endorse or promote products derived from this 
+//   software without specific prior written permission.
+// 
+//THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+//AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE 
+//IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+//ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE 
+//LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+//CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF 
+//SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+//INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+//CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+//ARISING IN ANY WAY OUT OF THE USE OF THIS  SOFTWARE, EVEN IF ADVISED OF 
+//THE POSSIBILITY OF SUCH DAMAGE.
+
+package de.uka.ilkd.pp;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/** A {@link Backend} which collects all output in a <code>char</code>
+ * array of its own.  The output can be used without copying it: as a
+ * read-only CharSequence ({@link #getCharSequence()}), as a range of 
+ * the array ({@link #getChars()} and {@link #count()}), or by writing
+ * it to a Writer or, as UTF-8, to an OutputStream.  
+ * {@link #getString()} copies it into a String.
+ *
+ * <p>{@link #reset()} discards the output but keeps the array, so a
+ * backend can be reused for many documents without allocating.  The 
+ * CharSequence and array returned for one document must not be used 
+ * after the backend is reset.
+ *
+ * <p>The {@link #mark(Object o)} method does nothing in this 
+ * implementation.
+ * @since 0.8.0
+ */
+public class CharArrayBackend implements LineBackend<NoExceptions> {
+
+	/** The initial capacity if none is given */
+	public static final int DEFAULT_CAPACITY = 256;
+
+	/** The largest size the array is doubled to, as some VMs cannot
+	 * allocate arrays of up to <code>Integer.MAX_VALUE</code> elements */
+	private static final int MAX_ARRAY_SIZE = Integer.MAX_VALUE - 8;
+
+	/** The maximum width of lines to be written to this backend. */
+	protected int lineWidth;
+
+	/** The width of a tab for indentation, or 0 to indent with spaces
+	 * only.  See {@link #tabWidth()}. */
+	protected int tabWidth = 0;
+
+	/** The output.  Only the first <code>length</code> characters are
+	 * used. */
+	private char[] buf;
+
+	/** The number of characters of output */
+	private int length = 0;
+
+	public CharArrayBackend(int lineWidth) {
+		this(lineWidth, DEFAULT_CAPACITY);
+	}
+
+	/** Create a backend whose array initially holds 
+	 * <code>capacity</code> characters. */
+	public CharArrayBackend(int lineWidth, int capacity) {
+		this.lineWidth = lineWidth;
+		this.buf = new char[Math.max(capacity, 16)];
+	}
+
+	/** Discard the output written through this backend, so that it can
+	 * be reused for another document.  The array is kept. */
+	public void reset() {
+		length = 0;
+	}
+
+	/** Discard the output written through this backend, and change the
+	 * line width to <code>lineWidth</code>.  A {@link Layouter} using
+	 * this backend must be reset after this, so that it picks up the
+	 * new width. */
+	public void reset(int lineWidth) {
+		reset();
+		this.lineWidth = lineWidth;
+	}
+
+	/** Indent lines with tabs of width <code>tabWidth</code>, or with
+	 * spaces only if it is 0.  A {@link Layouter} using this backend 
+	 * picks this up when it is created or reset.
+	 */
+	public void setTabWidth(int tabWidth) {
+		this.tabWidth = tabWidth;
+	}
+
+	/** Append a String <code>s</code> to the output.  <code>s</code> 
+	 * contains no newlines. */
+	public void print(String s) {
+		int n = s.length();
+		reserve(n);
+		s.getChars(0, n, buf, length);
+		length += n;
+	}
+
+	/** Append the characters <code>cs[offset..offset+n-1]</code>
+	 * to the output. */
+	public void print(char[] cs, int offset, int n) {
+		reserve(n);
+		System.arraycopy(cs, offset, buf, length, n);
+		length += n;
+	}
+
+	/** Append the characters <code>cs[offset..offset+n-1]</code>
+	 * and a newline to the output. */
+	public void printLine(char[] cs, int offset, int n) {
+		reserve(n + 1);
+		System.arraycopy(cs, offset, buf, length, n);
+		length += n;
+		buf[length++] = '\n';
+	}
+
+	/** Start a new line. */
+	public void newLine() {
+		reserve(1);
+		buf[length++] = '\n';
+	}
+
+	/** Append <code>n</code> spaces to the output. */
+	public void writeSpaces(int n) {
+		reserve(n);
+		Arrays.fill(buf, length, length + n, ' ');
+		length += n;
+	}
+
+	/** Closes this backend */
+	public void close() {
+		return;
+	}
+
+	/** Flushes any buffered output */
+	public void flush() {
+		return;
+	}
+
+	/** Gets called to record a <code>mark()</code> call in the input. */
+	public void mark(Object o) {
+		return;
+	}
+
+	/** Returns the number of characters written through this backend.*/
+	public int count() {
+		return length;
+	}
+
+	/** Returns the available space per line */
+	public int lineWidth() {
+		return lineWidth;
+	}
+
+	/** Returns the width of a tab for indentation, or 0 */
+	public int tabWidth() {
+		return tabWidth;
+	}
+
+	/** Returns the space required to print the String <code>s</code> */
+	public int measure(String s) {
+		return s.length();
+	}
+
+	/** Returns the space required to print the given characters.  In
+	 * a subclass, this is what {@link #measure(String)} returns for 
+	 * them, so that the two agree if that is overridden. */
+	public int measure(char[] buf, int offset, int length) {
+		if (getClass() == CharArrayBackend.class) {
+			return length;
+		}
+		return measure(new String(buf, offset, length));
+	}
+
+	/** Returns the accumulated output as a new String */
+	public String getString() {
+		return new String(buf, 0, length);
+	}
+
+	/** Returns the array holding the output.  The output is in the 
+	 * first {@link #count()} elements.  The array must not be modified,
+	 * and it is only up to date until more output is written. */
+	public char[] getChars() {
+		return buf;
+	}
+
+	/** Returns a read-only view of the output written so far.  Output
+	 * written later is not included. */
+	public CharSequence getCharSequence() {
+		return new View(buf, 0, length);
+	}
+
+	/** Write the output to <code>w</code> */
+	public void writeTo(Writer w) throws IOException {
+		w.write(buf, 0, length);
+	}
+
+	/** Write the output to <code>out</code>, encoded as UTF-8 */
+	public void writeTo(final OutputStream out) throws IOException {
+		Utf8Encoder encoder = 
+			new Utf8Encoder(ByteBuffer.allocate(
+					(int) Math.min(8192, Math.max(4, 3L * length)))) {
+			void write(ByteBuffer b) throws IOException {
+				out.write(b.array(), b.arrayOffset() + b.position(), 
+						b.remaining());
+				b.position(b.limit());
+			}
+		};
+		encoder.encode(buf, 0, length);
+		encoder.finish();
+	}
+
+	/** Make room for <code>n</code> more characters */
+	private void reserve(int n) {
+		if (n > buf.length - length) {
+			int needed = length + n;
+			if (needed < 0) {
+				throw new OutOfMemoryError("output too large");
+			}
+			int doubled = (int) Math.min(2L * buf.length, MAX_ARRAY_SIZE);
+			buf = Arrays.copyOf(buf, Math.max(doubled, needed));
+		}
+	}
+
+	/** A read-only CharSequence view of a range of an array */
+	private static final class View implements CharSequence {
+		private final char[] chars;
+		private final int start;
+		private final int end;
+
+		View(char[] chars, int start, int end) {
+			this.chars = chars;
+			this.start = start;
+			this.end = end;
+		}
+
+		public int length() {
+			return end - start;
+		}
+
+		public char charAt(int index) {
+			if (index < 0 || index >= end - start) {
+				throw new IndexOutOfBoundsException("index " + index);
+			}
+			return chars[start + index];
+		}
+
+		public CharSequence subSequence(int from, int to) {
+			if (from < 0 || to > end - start || from > to) {
+				throw new IndexOutOfBoundsException(
+						"range " + from + ".." + to);
+			}
+			return new View(chars, start + from, start + to);
+		}
+
+		public String toString() {
+			return new String(chars, start, end - start);
+		}
+	}
+}
@@ -68,6 +68,34 @@ public class DataLayouter<Exc extends Exception> extends Layouter<Exc> {
 	public DataLayouter(Backend<Exc> back,int indentation) {
 		super(back, indentation);
 	}
+
+	/**
+	 * Construts a newly allocated DataLayouter which will send output to
+	 * the given {@link Backend}, has the given default indentation, and
+	 * internal buffers with the given initial capacity.
+	 *
+	 * @param back the Backend
+	 * @param indentation the default indentation
+	 * @param capacity the initial capacity of the internal buffers
+	 * @since 0.8.0
+	 */
+	public DataLayouter(Backend<Exc> back,int indentation,int capacity) {
+		super(back, indentation, capacity);
+	}
+
+	/**
+	 * Construts a newly allocated DataLayouter which will send output to
+	 * the given {@link Backend}, has the given default indentation, and
+	 * lays out breaks according to <code>mode</code>.
+	 *
+	 * @param back the Backend
+	 * @param indentation the default indentation
+	 * @param mode the layout mode
+	 * @since 0.8.0
+	 */
+	public DataLayouter(Backend<Exc> back,int indentation,LayoutMode mode) {
+		super(back, indentation, mode);
+	}
 	
 	// STATIC FACTORY METHODS ----------------------------------------
 
@@ -151,7 +179,9 @@ public class DataLayouter<Exc extends Exception> extends Layouter<Exc> {
 	 * @param c A collection
 	 */
 	public DataLayouter<Exc> print(Collection<?> c) throws Exc {
-		print("[").beginC(0);
+		/* the block holds everything but the opening bracket */
+		print("[").begin(BreakConsistency.CONSISTENT, IndentationBase.FROM_POS,
+						 0, blockFlatWidth(c.size(), "]", ""));
 		boolean first = true;
 		for (Object o : c) {
 			if (!first) {
@@ -191,7 +221,8 @@ public class DataLayouter<Exc extends Exception> extends Layouter<Exc> {
 	 * indicated for {@link #printEntry(java.util.Map.Entry)}.
 	 */
 	public DataLayouter<Exc> print(Map<?, ?> m) throws Exc {
-		print("{").beginC(0);
+		print("{").begin(BreakConsistency.CONSISTENT, IndentationBase.FROM_POS,
+						 0, blockFlatWidth(m.size(), "}", "="));
 		boolean first = true;
 		for (Map.Entry<?, ?> e : m.entrySet()) {
 			if (!first) {
@@ -226,6 +257,55 @@ public class DataLayouter<Exc extends Exception> extends Layouter<Exc> {
 		return this;
 	}
 
+	/** Returns a lower bound for the space needed to print <code>o</code>
+	 * on one line with {@link #print(Object)}, computed in constant time.
+	 * For a {@link FlatWidthHint}, this is the value it gives.  For
+	 * collections, maps, and arrays, it is the space needed by the 
+	 * brackets and separators, assuming that every character needs
+	 * at least one unit of space, as with {@link StringBackend} and
+	 * {@link WriterBackend}.  Otherwise, it is 0.  The DataLayouter 
+	 * itself measures the brackets and separators with its backend.
+	 * 
+	 * @param o an object
+	 * @return a lower bound for the flat width of <code>o</code>
+	 * @since 0.8.0
+	 */
+	public static int minFlatWidth(Object o) {
+		if (o instanceof FlatWidthHint) {
+			return ((FlatWidthHint) o).minFlatWidth();
+		} else if (o instanceof Collection<?>) {
+			return separatedWidth(((Collection<?>) o).size(), 0);
+		} else if (o instanceof Map<?, ?>) {
+			/* each entry has at least a '=' */
+			return separatedWidth(((Map<?, ?>) o).size(), 1);
+		} else if (o != null && o.getClass().isArray()) {
+			return separatedWidth(java.lang.reflect.Array.getLength(o), 0);
+		} else {
+			return 0;
+		}
+	}
+
+	/** Width of <code>n</code> elements of at least <code>min</code>
+	 * characters, separated by ", ", between two brackets. */
+	private static int separatedWidth(int n, int min) {
+		long w = 2L + (long) n * min + (n > 0 ? 2L * (n - 1) : 0);
+		return (int) Math.min(w, Integer.MAX_VALUE);
+	}
+
+	/** Returns a lower bound for the space needed by the block of 
+	 * {@link #print(Collection)} or {@link #print(Map)} on one line, 
+	 * i.e. everything but the opening bracket: <code>n</code> elements
+	 * each containing <code>inner</code>, separated by "," and a break,
+	 * and the closing bracket.  Unlike {@link #minFlatWidth(Object)},
+	 * the text is measured by the backend. */
+	private int blockFlatWidth(int n, String close, String inner) {
+		long w = measure(close);
+		if (n > 0) {
+			w += (long) n * measure(inner) + (long) (n - 1) * (measure(",") + 1);
+		}
+		return (int) Math.min(w, Integer.MAX_VALUE);
+	}
+
 	// OVERRIDES OF INHERITED METHODS --------------------------------------
 
 	/* The point here is the covariant refinement of the return types
@@ -234,6 +314,18 @@ public class DataLayouter<Exc extends Exception> extends Layouter<Exc> {
 	 * could declare as return type for these mehtods...
 	 */
 	
+	@Override
+	public DataLayouter<Exc> reset() {
+		super.reset();
+		return this;
+	}
+
+	@Override
+	public DataLayouter<Exc> reset(Backend<Exc> back) {
+		super.reset(back);
+		return this;
+	}
+
 	@Override
 	public DataLayouter<Exc> begin(BreakConsistency consistent,
 								    IndentationBase fromPos, 
@@ -241,6 +333,14 @@ public class DataLayouter<Exc extends Exception> extends Layouter<Exc> {
 		super.begin(consistent, fromPos, indent);
 		return this;
 	}
+
+	@Override
+	public DataLayouter<Exc> begin(BreakConsistency consistent,
+								    IndentationBase indBase, 
+								    int indent, int minWidth) throws Exc {
+		super.begin(consistent, indBase, indent, minWidth);
+		return this;
+	}
 	
 	/**
 	 * @deprecated use {@link #begin(de.uka.ilkd.pp.Layouter.BreakConsistency, de.uka.ilkd.pp.Layouter.IndentationBase, int)}
@@ -295,6 +395,18 @@ public class DataLayouter<Exc extends Exception> extends Layouter<Exc> {
 		return this;
 	}
 
+	@Override
+	public DataLayouter<Exc> beginB() {
+		super.beginB();
+		return this;
+	}
+
+	@Override
+	public DataLayouter<Exc> beginB(int indent) {
+		super.beginB(indent);
+		return this;
+	}
+
 	@Override
 	public DataLayouter<Exc> beginIInd() {
 		super.beginIInd();
@@ -372,5 +484,48 @@ public class DataLayouter<Exc extends Exception> extends Layouter<Exc> {
 		super.print(s);
 		return this;
 	}
+
+	@Override
+	public DataLayouter<Exc> print(char[] buf, int offset, int length)
+	throws Exc {
+		super.print(buf, offset, length);
+		return this;
+	}
+
+	@Override
+	public DataLayouter<Exc> print(int i) throws Exc {
+		super.print(i);
+		return this;
+	}
+
+	@Override
+	public DataLayouter<Exc> print(long l) throws Exc {
+		super.print(l);
+		return this;
+	}
+
+	@Override
+	public DataLayouter<Exc> print(double d) throws Exc {
+		super.print(d);
+		return this;
+	}
+
+	@Override
+	public DataLayouter<Exc> print(char c) throws Exc {
+		super.print(c);
+		return this;
+	}
+
+	@Override
+	public DataLayouter<Exc> print(boolean b) throws Exc {
+		super.print(b);
+		return this;
+	}
+
+	@Override
+	public DataLayouter<Exc> print(CharSequence cs) throws Exc {
+		super.print(cs);
+		return this;
+	}
 	
 }
@@ -0,0 +1,138 @@
+//This file is part of the Java™ Pretty Printer Library (JPPlib)
+//Copyright (c) 2009, Martin Giese
+//All rights reserved.
+//
+//Redistribution and use in source and binary forms, with or without 
+//modification, are permitted provided that the following conditions are met:
+// 
+// * Redistributions of source code must retain the above copyright 
+//   notice, this list of conditions and the following disclaimer.
+// * Redistributions in binary form must reproduce the above copyright 
+//   notice, this list of conditions and the following disclaimer in the 
+//   documentation and/or other materials provided with the distribution.
+// * Neither the name of the author nor the names of his contributors 
+//   may be used to endorse or promote products derived from this 
+//   software without specific prior written permission.
+// 
+//THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+//AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE 
+//IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+//ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE 
+//LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+//CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF 
+//SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+//INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+//CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+//ARISING IN ANY WAY OUT OF THE USE OF THIS  SOFTWARE, EVEN IF ADVISED OF 
+//THE POSSIBILITY OF SUCH DAMAGE.
+
+package de.uka.ilkd.pp;
+
+/** The delimiter stack of a {@link Layouter}.  This holds the sequence
+ * numbers of the <code>OPEN_BLOCK</code> and <code>BREAK</code> tokens
+ * in the Layouter's {@link TokenBuffer} that are waiting for their size
+ * to be determined.
+ *
+ * <p>Tokens are pushed and popped at the top, but the Layouter also
+ * removes tokens from the bottom when it finds that they are too large
+ * to fit on a line.  The entries are therefore kept in an
+ * <code>int</code> array used as a ring buffer, which makes all
+ * operations constant time and allocation free once the array is large
+ * enough for the deepest nesting seen.
+ *
+ * <p>Popping from an empty stack means that more blocks were ended
+ * than begun, and leads to an {@link UnbalancedBlocksException}.
+ */
+class DelimiterStack {
+
+	private int[] elements;
+
+	/** capacity - 1, capacity being a power of two */
+	private int mask;
+
+	/** index of the bottom element, not reduced modulo the capacity */
+	private int bottom = 0;
+
+	/** index one above the top element, not reduced modulo the capacity */
+	private int top = 0;
+
+	/** Create a stack with room for at least <code>capacity</code>
+	 * entries before it has to grow. */
+	DelimiterStack(int capacity) {
+		allocate(roundUp(capacity));
+	}
+
+	/** Remove all entries.  If the stack has grown beyond room for
+	 * <code>retained</code> entries, it is shrunk back to that size. */
+	void clear(int retained) {
+		bottom = top = 0;
+		int capacity = roundUp(retained);
+		if (elements.length > capacity) {
+			allocate(capacity);
+		}
+	}
+
+	/** Return whether the stack is empty. */
+	boolean isEmpty() {
+		return bottom == top;
+	}
+
+	/** Return the number of entries on the stack. */
+	int size() {
+		return top - bottom;
+	}
+
+	/** Push the token <code>t</code> onto the stack. */
+	void push(int t) {
+		if (top - bottom == elements.length) {
+			grow();
+		}
+		elements[top++ & mask] = t;
+	}
+
+	/** Pop the topmost token from the stack. */
+	int pop() {
+		if (bottom == top) {
+			throw new UnbalancedBlocksException();
+		}
+		return elements[--top & mask];
+	}
+
+	/** Return the topmost token, without popping it. */
+	int top() {
+		if (bottom == top) {
+			throw new UnbalancedBlocksException();
+		}
+		return elements[(top - 1) & mask];
+	}
+
+	/** Remove and return the token at the <em>bottom</em> of the stack. */
+	int popBottom() {
+		if (bottom == top) {
+			throw new UnbalancedBlocksException();
+		}
+		return elements[bottom++ & mask];
+	}
+
+	private void grow() {
+		int[] old = elements;
+		int oldMask = mask;
+		allocate(2 * old.length);
+		for (int i = bottom; i != top; i++) {
+			elements[i & mask] = old[i & oldMask];
+		}
+	}
+
+	private void allocate(int capacity) {
+		elements = new int[capacity];
+		mask = capacity - 1;
+	}
+
+	private static int roundUp(int capacity) {
+		int c = 16;
+		while (c < capacity) {
+			c *= 2;
+		}
+		return c;
+	}
+}
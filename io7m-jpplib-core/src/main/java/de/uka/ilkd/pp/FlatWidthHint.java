@@ -0,0 +1,59 @@
+//This file is part of the Java™ Pretty Printer Library (JPPlib)
+//Copyright (c) 2009, Martin Giese
+//All rights reserved.
+//
+//Redistribution and use in source and binary forms, with or without 
+//modification, are permitted provided that the following conditions are met:
+// 
+// * Redistributions of source code must retain the above copyright 
+//   notice, this list of conditions and the following disclaimer.
+// * Redistributions in binary form must reproduce the above copyright 
+//   notice, this list of conditions and the following disclaimer in the 
+//   documentation and/or other materials provided with the distribution.
+// * Neither the name of the author nor the names of his contributors 
+//   may be used to endorse or promote products derived from this 
+//   software without specific prior written permission.
+// 
+//THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+//AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE 
+//IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+//ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE 
+//LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+//CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF 
+//SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+//INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+//CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+//ARISING IN ANY WAY OUT OF THE USE OF THIS  SOFTWARE, EVEN IF ADVISED OF 
+//THE POSSIBILITY OF SUCH DAMAGE.
+
+package de.uka.ilkd.pp;
+
+/** An interface for objects that can tell cheaply how much space they
+ * need at least when printed on one line.  This is a companion to
+ * {@link PrettyPrintable}: an object implementing both can pass 
+ * its hint to 
+ * {@link Layouter#begin(Layouter.BreakConsistency, Layouter.IndentationBase, int, int)}
+ * when it begins its outermost block.  {@link DataLayouter} does the
+ * same for collections, maps, and arrays, see 
+ * {@link DataLayouter#minFlatWidth(Object)}.
+ * If a block is known to be too large for the line, the Layouter can
+ * decide to break it, and any blocks around it, right away, instead of
+ * buffering its contents until it runs out of space.
+ * 
+ * <p>The width is given in the units of {@link Backend#measure(String)}.
+ * It is fine to return a value that is too small, e.g. 0 if nothing 
+ * is known, but a value that is too large leads to unnecessary line
+ * breaks.
+ * 
+ * @since 0.8.0
+ */
+public interface FlatWidthHint {
+	/**
+	 * Returns a lower bound for the space needed to print 
+	 * <code>this</code> on a single line, or the exact value if it is
+	 * cheap to compute.
+	 * 
+	 * @return a lower bound for the flat width of <code>this</code>
+	 */
+	public int minFlatWidth();
+}
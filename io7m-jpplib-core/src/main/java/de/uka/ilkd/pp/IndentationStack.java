@@ -28,59 +28,93 @@
 
 package de.uka.ilkd.pp;
 
-import java.util.ArrayList;
+import java.util.Arrays;
 
+/** The stack of indentation levels and break decisions of the 
+ * blocks currently open in a {@link Printer}.
+ *
+ * <p>Each entry is packed into a single <code>long</code>, with the
+ * indentation in the upper bits and the ordinal of the 
+ * {@link BreakDecision} in the lowest two bits, so pushing and 
+ * popping entries does not allocate once the array is large enough
+ * for the deepest nesting seen.
+ */
 class IndentationStack {
 
 	static enum BreakDecision {
 		FITS,INCONSISTENT,CONSISTENT;
 		
 		static BreakDecision fromBreakConsistency(Layouter.BreakConsistency c) {
-			return c==Layouter.BreakConsistency.CONSISTENT?
-					CONSISTENT:INCONSISTENT;
+			return c==Layouter.BreakConsistency.INCONSISTENT?
+					INCONSISTENT:CONSISTENT;
 		}
 	}
+
+	/* Cached, as values() returns a fresh copy on every call. */
+	private static final BreakDecision[] DECISIONS = BreakDecision.values();
+
+	private static final int DECISION_BITS = 2;
+	private static final long DECISION_MASK = (1 << DECISION_BITS) - 1;
 	
-	private ArrayList<Entry> stack = new ArrayList<Entry>(10);
+	private long[] stack;
+
+	/** number of entries on the stack */
+	private int size = 0;
+
+	/** Create a stack with room for <code>capacity</code> entries before
+	 * it has to grow. */
+	IndentationStack(int capacity) {
+		stack = new long[Math.max(capacity, 16)];
+	}
+
+	/** Remove all entries.  If the stack has grown beyond room for
+	 * <code>retained</code> entries, it is shrunk back to that size. */
+	void clear(int retained) {
+		size = 0;
+		if (stack.length > Math.max(retained, 16)) {
+			stack = new long[Math.max(retained, 16)];
+		}
+	}
 	
 	/** Return whether the stack is empty. */
 	boolean isEmpty() {
-		return stack.isEmpty();
+		return size == 0;
 	}
 
 	/** Pop one element from the margin stack. */
 	void pop() {
-		try {
-			stack.remove(stack.size() - 1);
-		} catch (IndexOutOfBoundsException e) {
+		if (size == 0) {
 			throw new UnbalancedBlocksException();
 		}
+		size--;
 	}
 
 	/** push one element,consisting of margin and 
 	 * break decision onto the margin stack. */
 	void push(int n, BreakDecision dec) {
-		stack.add(new Entry(n,dec));
+		if (size == stack.length) {
+			stack = Arrays.copyOf(stack, 2 * size);
+		}
+		stack[size++] = (long) n << DECISION_BITS | dec.ordinal();
 	}
 
 	/** return the topmost element of the margin stack without popping it. */
-	private Entry top() {
-		try {
-			return stack.get(stack.size() - 1);
-		} catch (IndexOutOfBoundsException e) {
+	private long top() {
+		if (size == 0) {
 			throw new UnbalancedBlocksException();
 		}
+		return stack[size - 1];
 	}
 
 	/** return the margin of the top element of the margin stack. */
 	int topIndentation() {
-		return top().getIndentation();
+		return (int) (top() >> DECISION_BITS);
 	}
 
 
 	/** return the break type flags of the top element of the margin stack. */
 	BreakDecision topDecision() {
-		return top().getDecision();
+		return DECISIONS[(int) (top() & DECISION_MASK)];
 	}
 
 	boolean topInconsistent() {
@@ -94,27 +128,4 @@ class IndentationStack {
 	boolean topFits() {
 		return topDecision() == BreakDecision.FITS;
 	}
-
-	private class Entry {
-		private final int indentation;
-		private final BreakDecision decision;
-		
-		Entry(final int indentation, final BreakDecision decision) {
-			super();
-			this.indentation = indentation;
-			this.decision = decision;
-		}
-		/**
-		 * @return the decision
-		 */
-		BreakDecision getDecision() {
-			return decision;
-		}
-		/**
-		 * @return the indentation
-		 */
-		int getIndentation() {
-			return indentation;
-		}		
-	}
 }
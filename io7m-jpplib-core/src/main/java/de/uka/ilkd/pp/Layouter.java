@@ -28,12 +28,16 @@
 
 package de.uka.ilkd.pp;
 
+import static de.uka.ilkd.pp.TokenBuffer.*;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
-import java.util.List;
+import java.io.Reader;
+import java.util.Arrays;
 import java.util.StringTokenizer;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Pretty-print information formatted using line breaks and indentation. For
@@ -216,6 +220,14 @@ import java.util.StringTokenizer;
  * will begin before the whole input has been given, so this class can be used
  * to pretty-print a stream of data.
  * 
+ * <p>
+ * If no line breaking is needed, e.g. for output read by machines, a
+ * Layouter can be constructed with a {@link LayoutMode} other than 
+ * {@link LayoutMode#PRETTY}.  In {@link LayoutMode#FLAT} mode, no break
+ * is ever taken, and in {@link LayoutMode#ALL_BROKEN} mode, every break
+ * is taken.  Since no decisions need to be made, nothing is buffered
+ * in these modes, and output is considerably faster.
+ * 
  * @param <Exc>
  *            The type of exceptions that might be thrown by the backend.
  * 
@@ -242,12 +254,29 @@ public class Layouter<Exc extends Exception> {
 
 	private boolean finished;
 
-	/** An enum type to distinguish consistent and inconsistent blocks. */
-	public static enum BreakConsistency {CONSISTENT,INCONSISTENT}
+	/** An enum type to distinguish consistent and inconsistent blocks.
+	 * A <code>BROKEN</code> block is a consistent block which is known
+	 * in advance not to fit on one line, so all its breaks are taken. */
+	public static enum BreakConsistency {CONSISTENT,INCONSISTENT,BROKEN}
 	
 	/** An enum type to distinguish indentation relative to the current position
 	 * or relative to the surrounding block's indentation level */
 	public static enum IndentationBase {FROM_POS,FROM_IND}
+
+	/** An enum type to select how breaks are laid out.
+	 * @since 0.8.0 */
+	public static enum LayoutMode {
+		/** Break lines only where needed to respect the line width. */
+		PRETTY,
+		/** Never break lines: every break prints as its width in spaces,
+		 * and every indentation as its width.  Forced line breaks from
+		 * {@link Layouter#nl()} and {@link Layouter#pre(String)} still
+		 * start a new line, without indentation. */
+		FLAT,
+		/** Break every line: every break starts a new, indented line,
+		 * regardless of the line width. */
+		ALL_BROKEN
+	}
 	
 	/** The backend */
 	private Backend<Exc> back;
@@ -255,22 +284,33 @@ public class Layouter<Exc extends Exception> {
 	/** The Printer used for output. */
 	private Printer<Exc> out;
 
-	/** The list of scanned tokens not yet output. */
-	private List<StreamToken> stream = new java.util.LinkedList<StreamToken>();
+	/** How breaks are laid out. */
+	private final LayoutMode mode;
+
+	/** The number of open blocks, only maintained in modes other than
+	 * {@link LayoutMode#PRETTY}, where the delimiter stack does not keep
+	 * track of them. */
+	private int openBlocks = 0;
+
+	/** The scanned tokens not yet output. */
+	private TokenBuffer stream;
 
 	/**
-	 * A stack of <code>OpenBlockToken</code>s and <code>BreakToken</code>s
-	 * in <code>stream</code>, waiting for their size to be determined.
+	 * A stack of the sequence numbers of the <code>OPEN_BLOCK</code> and
+	 * <code>BREAK</code> tokens in <code>stream</code>, waiting for their
+	 * size to be determined.
 	 */
-	private List<StreamToken> delimStack = new java.util.LinkedList<StreamToken>();
+	private DelimiterStack delimStack;
 
 	/*
 	 * Some Invariants:
 	 * 
-	 * delimStack.isEmpty() implies stream.isEmpty()
+	 * delimStack.isEmpty() implies that all tokens in stream have a known
+	 * size.  Except right after the beginning of a BROKEN block, it also
+	 * implies stream.isEmpty()
 	 * 
-	 * Any OpenBlockToken in stream is also on the demlimStack. The latest
-	 * BreakToken of any open block in the stream is also on the delim stack.
+	 * Any OPEN_BLOCK token in stream is also on the demlimStack. The latest
+	 * BREAK token of any open block in the stream is also on the delim stack.
 	 * 
 	 */
 
@@ -288,6 +328,14 @@ public class Layouter<Exc extends Exception> {
 	 */
 	private int totalOutput = 0;
 
+	/**
+	 * When <code>totalOutput</code> exceeds this, both totals and the 
+	 * positions recorded in the buffered tokens are reduced by it, so 
+	 * that a Layouter can be used for any amount of output without the
+	 * totals overflowing.
+	 */
+	private static final int REBASE_LIMIT = 1 << 30;
+
 	/**
 	 * The size assigned to things which are guaranteed not to fit on a line.
 	 * For good measure, this is intitialized to twice the line width by the
@@ -298,6 +346,66 @@ public class Layouter<Exc extends Exception> {
 	/** A default indentation value used for blocks. */
 	private int defaultInd;
 
+	/** Used to format numbers without creating Strings. */
+	private final StringBuilder scratch = new StringBuilder(32);
+
+	/** Holds text that is not available as a <code>char</code> array
+	 * while it is passed on by the convenience <code>print</code>
+	 * methods. */
+	private char[] scratchChars = new char[32];
+
+	/** Holds the widths of the words passed on by 
+	 * {@link #printWords(CharSequence)}. */
+	private int[] scratchWidths = new int[16];
+
+	/** The number of characters read at a time by {@link #print(Reader)}
+	 * and {@link #pre(Reader)} */
+	private static final int READ_CHUNK = 4096;
+
+	/** The capacity, in tokens, the buffers may keep when the Layouter
+	 * is reset. */
+	private int retainedCapacity = DEFAULT_RETAINED_CAPACITY;
+
+	/** The number of tokens beyond which the outermost waiting blocks
+	 * and breaks are broken, see {@link #setBufferLimits(int, int)} */
+	private int maxBufferedTokens = DEFAULT_MAX_BUFFERED_TOKENS;
+
+	/** The number of buffered characters beyond which the outermost 
+	 * waiting blocks and breaks are broken */
+	private int maxBufferedChars = DEFAULT_MAX_BUFFERED_CHARS;
+
+	/** The largest number of tokens buffered since the last reset */
+	private int peakBufferedTokens = 0;
+
+	/** The largest number of characters buffered since the last reset */
+	private int peakBufferedChars = 0;
+
+	/** The number of text tokens fused with the preceding one since the
+	 * last reset */
+	private long fusedTokens = 0;
+
+	/** The number of tokens cancelled or dropped without effect since 
+	 * the last reset */
+	private long cancelledTokens = 0;
+
+	/** Whether a bound was set with 
+	 * {@link #setLatencyBound(int, long, TimeUnit)} */
+	private boolean latencyBounded = false;
+
+	/** The number of buffered tokens at which all waiting material is 
+	 * sent on, or 0 */
+	private int latencyTokens = 0;
+
+	/** The time after which output is sent on and flushed, or 0 */
+	private long latencyNanos = 0;
+
+	/** Whether output may be pending since {@link #pendingSince} */
+	private boolean pending = false;
+
+	/** The time at which output was first found pending after the last
+	 * flush, from <code>System.nanoTime()</code> */
+	private long pendingSince;
+
 	// PRIMITIVE CONSTRUCTOR -------------------------------------------
 
 	/**
@@ -312,8 +420,67 @@ public class Layouter<Exc extends Exception> {
 	 */
 
 	public Layouter(Backend<Exc> back, int indentation) {
+		this(back, indentation, DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * Construts a newly allocated Layouter which will send output to the given
+	 * {@link Backend} and has the given default indentation.  The internal
+	 * buffers are allocated with room for <code>capacity</code> buffered
+	 * tokens and nested blocks, so they need not grow unless a layout
+	 * keeps more than that many tokens waiting.
+	 * 
+	 * @param back
+	 *            the Backend
+	 * @param indentation
+	 *            the default indentation
+	 * @param capacity
+	 *            the initial capacity of the internal buffers
+	 * @since 0.8.0
+	 */
+	public Layouter(Backend<Exc> back, int indentation, int capacity) {
+		this(back, indentation, capacity, LayoutMode.PRETTY);
+	}
+
+	/**
+	 * Construts a newly allocated Layouter which will send output to the given
+	 * {@link Backend}, has the given default indentation, and lays out
+	 * breaks according to <code>mode</code>.
+	 * 
+	 * @param back
+	 *            the Backend
+	 * @param indentation
+	 *            the default indentation
+	 * @param mode
+	 *            the layout mode
+	 * @since 0.8.0
+	 */
+	public Layouter(Backend<Exc> back, int indentation, LayoutMode mode) {
+		this(back, indentation, DEFAULT_CAPACITY, mode);
+	}
+
+	/**
+	 * Construts a newly allocated Layouter which will send output to the given
+	 * {@link Backend}, has the given default indentation and initial 
+	 * buffer capacity, and lays out breaks according to <code>mode</code>.
+	 * 
+	 * @param back
+	 *            the Backend
+	 * @param indentation
+	 *            the default indentation
+	 * @param capacity
+	 *            the initial capacity of the internal buffers
+	 * @param mode
+	 *            the layout mode
+	 * @since 0.8.0
+	 */
+	public Layouter(Backend<Exc> back, int indentation, int capacity, 
+					LayoutMode mode) {
+		this.mode = mode;
 		this.back = back;
-		out = new Printer<Exc>(back);
+		out = new Printer<Exc>(back, capacity);
+		stream = new TokenBuffer(capacity);
+		delimStack = new DelimiterStack(capacity);
 		largeSize = 2 * back.lineWidth();
 		this.defaultInd = indentation;
 	}
@@ -328,6 +495,33 @@ public class Layouter<Exc extends Exception> {
 	 */
 	public static final int DEFAULT_INDENTATION = 2;
 
+	/**
+	 * = 64 : The initial capacity of the internal buffers, in tokens, if
+	 * none is given to the constructor.
+	 */
+	public static final int DEFAULT_CAPACITY = 64;
+
+	/**
+	 * = 4096 : The capacity, in tokens, the internal buffers may keep
+	 * across a {@link #reset()}, unless set with 
+	 * {@link #setRetainedCapacity(int)}.
+	 */
+	public static final int DEFAULT_RETAINED_CAPACITY = 4096;
+
+	/**
+	 * = Integer.MAX_VALUE : The number of tokens that may be buffered,
+	 * unless set with {@link #setBufferLimits(int, int)}, i.e.
+	 * unlimited.
+	 */
+	public static final int DEFAULT_MAX_BUFFERED_TOKENS = Integer.MAX_VALUE;
+
+	/**
+	 * = Integer.MAX_VALUE : The number of characters that may be 
+	 * buffered in the character arena, unless set with 
+	 * {@link #setBufferLimits(int, int)}, i.e. unlimited.
+	 */
+	public static final int DEFAULT_MAX_BUFFERED_CHARS = Integer.MAX_VALUE;
+
 	/**
 	 * Factory method for a Layouter with a {@link WriterBackend}. The line
 	 * width is taken to be {@link #DEFAULT_LINE_WIDTH}, and the default
@@ -370,6 +564,27 @@ public class Layouter<Exc extends Exception> {
 				indentation);
 	}
 
+	/**
+	 * Factory method for a Layouter with a {@link WriterBackend} and the
+	 * given layout mode.
+	 * 
+	 * @param writer
+	 *            the {@link java.io.Writer} the Backend is going to use
+	 * @param lineWidth
+	 *            the maximum lineWidth the Backend is going to use
+	 * @param indentation
+	 *            the default indentation
+	 * @param mode
+	 *            the layout mode
+	 * @since 0.8.0
+	 */
+	public static Layouter<IOException> getWriterLayouter(
+			java.io.Writer writer, int lineWidth, int indentation,
+			LayoutMode mode) {
+		return new Layouter<IOException>(new WriterBackend(writer, lineWidth),
+				indentation, mode);
+	}
+
 	/**
 	 * Factory method for a Layouter with a {@link StringBackend}. The line
 	 * width is taken to be {@link #DEFAULT_LINE_WIDTH}, and the default
@@ -413,6 +628,26 @@ public class Layouter<Exc extends Exception> {
 				indentation);
 	}
 
+	/**
+	 * Factory method for a Layouter with a {@link StringBackend} and the
+	 * given layout mode.
+	 * 
+	 * @param sb
+	 *            the {@link StringBuilder} the Backend is going to use
+	 * @param lineWidth
+	 *            the maximum lineWidth the Backend is going to use
+	 * @param indentation
+	 *            the default indentation
+	 * @param mode
+	 *            the layout mode
+	 * @since 0.8.0
+	 */
+	public static Layouter<NoExceptions> getStringLayouter(StringBuilder sb,
+			int lineWidth, int indentation, LayoutMode mode) {
+		return new Layouter<NoExceptions>(new StringBackend(sb, lineWidth),
+				indentation, mode);
+	}
+
 	// PROPERTY GETTERS ------------------------------------
 
 	/**
@@ -424,6 +659,209 @@ public class Layouter<Exc extends Exception> {
 		return defaultInd;
 	}
 
+	/**
+	 * Gets the layout mode of this Layouter
+	 *
+	 * @return the layout mode
+	 * @since 0.8.0
+	 */
+	public LayoutMode getLayoutMode() {
+		return mode;
+	}
+
+	/**
+	 * Set the capacity the internal buffers may keep when the Layouter
+	 * is reset.  Buffers that have grown beyond room for 
+	 * <code>capacity</code> tokens, e.g. while laying out a large 
+	 * document, are shrunk back to that size by {@link #reset()}, so that
+	 * a long-lived Layouter does not hold on to the memory.
+	 * 
+	 * @param capacity
+	 *            the retained capacity, in tokens
+	 * @since 0.8.0
+	 */
+	public void setRetainedCapacity(int capacity) {
+		this.retainedCapacity = capacity;
+	}
+
+	/**
+	 * Limit the material the Layouter buffers while it waits to see
+	 * whether blocks fit on a line.  Normally, this is bounded by the 
+	 * line width, but tokens of no width, like marks, empty blocks or
+	 * <code>ind(0,0)</code>, take up buffer space without using up
+	 * the line.  When more than <code>maxTokens</code> tokens, or more
+	 * than <code>maxChars</code> characters held in the character 
+	 * arena, are buffered, the outermost waiting blocks and breaks are
+	 * broken, as if they did not fit, until the buffer is within the 
+	 * limits again.  The arena holds text passed as <code>char</code>
+	 * arrays or other non-String sequences, short Strings fused with 
+	 * adjacent text, and the words from {@link #printWords}.  The 
+	 * layout may then differ from the one without limits.  There are no
+	 * limits unless this is called.
+	 * 
+	 * <p>The limits are checked by every call except 
+	 * <code>begin</code>, which cannot throw the backend's exception.
+	 * The buffer is thus bounded by the line width and the limits only
+	 * up to the tokens of <code>begin</code> calls made since the last
+	 * other call: a run of <code>begin</code> calls is not bounded, 
+	 * and is brought within the limits by the next call that is not a
+	 * <code>begin</code>.
+	 * 
+	 * @param maxTokens
+	 *            the number of tokens that may be buffered
+	 * @param maxChars
+	 *            the number of characters that may be buffered
+	 * @since 0.8.0
+	 */
+	public void setBufferLimits(int maxTokens, int maxChars) {
+		this.maxBufferedTokens = maxTokens;
+		this.maxBufferedChars = maxChars;
+	}
+
+	/**
+	 * Gets the largest number of tokens buffered since the Layouter was
+	 * created or last reset.
+	 * 
+	 * @return the number of tokens
+	 * @since 0.8.0
+	 */
+	public int getPeakBufferedTokens() {
+		return peakBufferedTokens;
+	}
+
+	/**
+	 * Gets the largest number of characters held in the character arena
+	 * since the Layouter was created or last reset, see 
+	 * {@link #setBufferLimits(int, int)}.
+	 * 
+	 * @return the number of characters
+	 * @since 0.8.0
+	 */
+	public int getPeakBufferedChars() {
+		return peakBufferedChars;
+	}
+
+	/**
+	 * Gets the number of <code>print</code> calls whose text was 
+	 * appended to the text buffered by the previous one, since the 
+	 * Layouter was created or last reset.  Adjacent short pieces of 
+	 * text, as in <code>print("&lt;/").print(name).print("&gt;")</code>,
+	 * are buffered as one token and sent to the backend with one call, 
+	 * if they are not sent on right away.  The layout is the same.
+	 * 
+	 * @return the number of fused tokens
+	 * @since 0.8.0
+	 */
+	public long getFusedTokens() {
+		return fusedTokens;
+	}
+
+	/**
+	 * Gets the number of buffered tokens which were removed because 
+	 * they could have no effect, since the Layouter was created or last
+	 * reset.  These are the beginning and end of empty blocks, and
+	 * <code>ind(0,0)</code> right after another <code>ind</code> with
+	 * a non-negative offset.
+	 * 
+	 * @return the number of cancelled tokens
+	 * @since 0.8.0
+	 */
+	public long getCancelledTokens() {
+		return cancelledTokens;
+	}
+
+	/**
+	 * Bound the time output waits before it reaches the backend.
+	 * Material in a block that has not been ended is normally kept until
+	 * it is known whether the block fits on the line, which may be 
+	 * forever for a long-lived outer block.  With a bound set, all 
+	 * waiting blocks and breaks are broken, as if they did not fit, and
+	 * the output is sent to the backend and flushed, see 
+	 * {@link #flushPending()}, as soon as
+	 * <ul>
+	 * <li><code>maxTokens</code> tokens are buffered, or</li>
+	 * <li><code>maxDelay</code> has passed since output was first 
+	 *     pending after the last flush.</li>
+	 * </ul>
+	 * The Layouter has no thread of its own, so the bounds are checked 
+	 * when the next call comes in.  A producer that may go quiet should
+	 * call {@link #flushPending()} itself when it does.  A value of 0 
+	 * switches the respective bound off, which is the default.
+	 * 
+	 * @param maxTokens
+	 *            the number of buffered tokens at which output is sent
+	 *            on, or 0
+	 * @param maxDelay
+	 *            the time after which output is sent on and flushed, 
+	 *            or 0
+	 * @param unit
+	 *            the unit of <code>maxDelay</code>
+	 * @since 0.8.0
+	 */
+	public void setLatencyBound(int maxTokens, long maxDelay, TimeUnit unit) {
+		this.latencyTokens = maxTokens;
+		this.latencyNanos = unit.toNanos(maxDelay);
+		this.latencyBounded = maxTokens > 0 || maxDelay > 0;
+		this.pending = false;
+	}
+
+	// RESETTING -----------------------------------------------------
+
+	/**
+	 * Reset this Layouter to the state it had after construction, so that
+	 * it can be used to lay out another document.  Output continues to go
+	 * to the current backend, which the caller should have cleared if
+	 * required, e.g. using {@link StringBackend#reset()}.  Any material
+	 * still buffered is discarded.  This may also be called after
+	 * {@link #close()}, or after an exception left the Layouter in an
+	 * unusable state.
+	 * 
+	 * <p>The internal buffers are kept for reuse, up to the capacity set 
+	 * with {@link #setRetainedCapacity(int)}.
+	 * 
+	 * @return this
+	 * @since 0.8.0
+	 */
+	public Layouter<Exc> reset() {
+		return reset(back);
+	}
+
+	/**
+	 * Reset this Layouter to the state it had after construction, but
+	 * sending output to <code>back</code>.  The line width is taken
+	 * from the new backend.  Otherwise, this is like {@link #reset()}.
+	 * 
+	 * @param back
+	 *            the Backend to send output to from now on
+	 * @return this
+	 * @since 0.8.0
+	 */
+	public Layouter<Exc> reset(Backend<Exc> back) {
+		LOG.trace("reset");
+
+		this.back = back;
+		out.reset(back, retainedCapacity);
+		stream.clear(retainedCapacity);
+		delimStack.clear(retainedCapacity);
+		if (scratchChars.length > TokenBuffer.CHARS_PER_TOKEN * retainedCapacity) {
+			scratchChars = new char[32];
+		}
+		if (scratchWidths.length > retainedCapacity) {
+			scratchWidths = new int[16];
+		}
+		totalSize = 0;
+		totalOutput = 0;
+		openBlocks = 0;
+		peakBufferedTokens = 0;
+		peakBufferedChars = 0;
+		fusedTokens = 0;
+		cancelledTokens = 0;
+		pending = false;
+		largeSize = 2 * back.lineWidth();
+		finished = false;
+		return this;
+	}
+
 	// PRIMITIVE STREAM OPERATIONS ------------------------------------
 
 	/**
@@ -441,19 +879,62 @@ public class Layouter<Exc extends Exception> {
 
 		checkNotFinished();
 
-		if (delimStack.isEmpty()) {
-			out.print(s);
-			totalSize += back.measure(s);
-			totalOutput += back.measure(s);
+		int width = back.measure(s);
+		if (direct()) {
+			out.print(s, width);
+			totalSize += width;
+			totalOutput += width;
 		} else {
-			enqueue(new StringToken(s));
-			totalSize += back.measure(s);
+			if (stream.fuseString(s, width)) {
+				fusedTokens++;
+			} else {
+				stream.addString(s, width);
+			}
+			totalSize += width;
+			resolveOversized(0);
+			enforceBufferLimits();
+		}
+		return this;
+	}
 
-			while (totalSize - totalOutput > out.space()
-					&& !delimStack.isEmpty()) {
-				popBottom().setInfiniteSize();
-				advanceLeft();
+	/**
+	 * Output the characters <code>buf[offset..offset+length-1]</code>.
+	 * This has the same effect as {@link #print(String)} with a String
+	 * containing those characters, but no String is created.  The
+	 * characters are copied if they need to be buffered, so 
+	 * <code>buf</code> may be reused by the caller when this method
+	 * returns.
+	 * 
+	 * @param buf
+	 *            the characters to print.
+	 * @param offset
+	 *            the index of the first character to print
+	 * @param length
+	 *            the number of characters to print
+	 * @return this
+	 * @since 0.8.0
+	 */
+	public Layouter<Exc> print(char[] buf, int offset, int length) throws Exc {
+		if (LOG.isTraceEnabled()) {
+			LOG.trace("print: {}", new String(buf, offset, length));
+		}
+
+		checkNotFinished();
+
+		int width = back.measure(buf, offset, length);
+		if (direct()) {
+			out.print(buf, offset, length, width);
+			totalSize += width;
+			totalOutput += width;
+		} else {
+			if (stream.fuseChars(buf, offset, length, width)) {
+				fusedTokens++;
+			} else {
+				stream.addChars(buf, offset, length, width);
 			}
+			totalSize += width;
+			resolveOversized(0);
+			enforceBufferLimits();
 		}
 		return this;
 	}
@@ -466,6 +947,15 @@ public class Layouter<Exc extends Exception> {
 	 * or relative to the surrounding block's indentation level, depending on
 	 * the parameter <code>indBase</code>.
 	 * 
+	 * <p>A block with consistency {@link BreakConsistency#BROKEN} is laid 
+	 * out as a broken consistent block, without waiting to see whether
+	 * it fits.  Any material buffered so far is sent to the backend when
+	 * such a block is begun, and the block's own breaks are sent on 
+	 * directly, so that the Layouter only buffers the blocks nested 
+	 * inside it.  This is useful for top-level blocks that contain 
+	 * forced line breaks, or long sequences of items which will not fit
+	 * on one line anyway.
+	 * 
 	 * @param cons
 	 *            <code>true</code> for consistent block
 	 * @param indBase
@@ -483,9 +973,60 @@ public class Layouter<Exc extends Exception> {
 
 		checkNotFinished();
 
-		StreamToken t = new OpenBlockToken(cons, indBase, indent);
-		enqueue(t);
-		push(t);
+		if (mode != LayoutMode.PRETTY) {
+			openBlocks++;
+			if (mode == LayoutMode.ALL_BROKEN) {
+				out.openBlock(cons, indBase, indent, Integer.MAX_VALUE);
+			}
+			return this;
+		}
+
+		if (cons == BreakConsistency.BROKEN) {
+			/* All pending blocks and breaks contain or precede this
+			 * block on the same line, so they do not fit either.  The
+			 * stream is sent on by the next call that produces output,
+			 * see direct(). */
+			while (!delimStack.isEmpty()) {
+				setInfiniteSize(popBottom());
+			}
+			setInfiniteSize(
+				stream.addOpenBlock(cons, indBase, indent, totalSize));
+			return this;
+		}
+
+		push(stream.addOpenBlock(cons, indBase, indent, totalSize));
+		return this;
+	}
+
+	/**
+	 * Begin a block whose contents are known to need at least
+	 * <code>minWidth</code> space if printed on one line, e.g. from a
+	 * {@link FlatWidthHint}.  Otherwise like 
+	 * {@link #begin(BreakConsistency, IndentationBase, int)}.  If the
+	 * block, or any block around it, cannot fit on the current line with
+	 * that much content, the decision to break it is taken right away,
+	 * and the material buffered so far is sent to the backend.
+	 * 
+	 * @param cons
+	 *            the consistency of the block
+	 * @param indBase
+	 *            increment relative to current pos, not indentation
+	 * @param indent
+	 *            increment to indentation level
+	 * @param minWidth
+	 *            a lower bound for the space the contents of the block
+	 *            need on one line
+	 * @return this
+	 * @since 0.8.0
+	 */
+	public Layouter<Exc> begin(BreakConsistency cons, 
+								 IndentationBase indBase, 
+								 int indent,
+								 int minWidth) throws Exc {
+		begin(cons, indBase, indent);
+		if (mode == LayoutMode.PRETTY && cons != BreakConsistency.BROKEN) {
+			resolveOversized(Math.min(minWidth, largeSize));
+		}
 		return this;
 	}
 
@@ -507,23 +1048,39 @@ public class Layouter<Exc extends Exception> {
 
 		checkNotFinished();
 
-		if (delimStack.isEmpty()) {
+		if (mode != LayoutMode.PRETTY) {
+			if (openBlocks == 0) {
+				throw new UnbalancedBlocksException();
+			}
+			openBlocks--;
+			if (mode == LayoutMode.ALL_BROKEN) {
+				out.closeBlock();
+			}
+		} else if (direct()) {
 			/* then stream is also empty, so output */
 			out.closeBlock();
 		} else {
-			enqueue(new CloseBlockToken());
-
-			StreamToken topDelim = pop();
-			topDelim.setEnd();
-			if (topDelim.isBreakToken() && !delimStack.isEmpty()) {
-				/* This must be the matching OpenBlockToken */
-				StreamToken topOpen = pop();
-				topOpen.setEnd();
+			int topDelim = pop();
+			if (topDelim == stream.last() 
+					&& stream.opcode(topDelim) == OPEN_BLOCK) {
+				/* The block is empty, so neither token has any effect */
+				stream.removeLast();
+				cancelledTokens += 2;
+			} else {
+				stream.addCloseBlock();
+				setEnd(topDelim);
+				if (isBreakToken(topDelim) && !delimStack.isEmpty()) {
+					/* This must be the matching OPEN_BLOCK token */
+					int topOpen = pop();
+					setEnd(topOpen);
+				}
 			}
 
 			if (delimStack.isEmpty()) {
 				/* preserve invariant */
 				advanceLeft();
+			} else {
+				enforceBufferLimits();
 			}
 		}
 		return this;
@@ -548,18 +1105,34 @@ public class Layouter<Exc extends Exception> {
 
 		checkNotFinished();
 
+		if (mode == LayoutMode.FLAT) {
+			out.printSpaces(width);
+			return this;
+		} else if (mode == LayoutMode.ALL_BROKEN) {
+			out.printBreak(width, offset, Integer.MAX_VALUE);
+			return this;
+		}
+
+		if (direct() && out.topBroken()) {
+			/* The innermost block is consistent and already broken,
+			 * so this break will be taken whatever follows. */
+			out.printBreak(width, offset, 0);
+			totalSize += width;
+			totalOutput += width;
+			return this;
+		}
+
 		if (!delimStack.isEmpty()) {
-			StreamToken s = top();
-			if (s.isBreakToken()) {
+			int s = top();
+			if (isBreakToken(s)) {
 				pop();
-				s.setEnd();
+				setEnd(s);
 			}
 		}
 
-		StreamToken t = new BreakToken(width, offset);
-		enqueue(t);
-		push(t);
+		push(stream.addBreak(width, offset, totalSize));
 		totalSize += width;
+		enforceBufferLimits();
 		return this;
 	}
 
@@ -584,13 +1157,22 @@ public class Layouter<Exc extends Exception> {
 
 		checkNotFinished();
 
-		if (delimStack.isEmpty()) {
+		if (mode == LayoutMode.FLAT) {
+			out.printSpaces(width);
+		} else if (direct()) {
 			out.indent(width, offset);
 			totalSize += width;
 			totalOutput += width;
+		} else if (width == 0 && offset == 0 && !stream.isEmpty()
+				   && stream.opcode(stream.last()) == INDENTATION
+				   && stream.offset(stream.last()) >= 0) {
+			/* The previous ind has already advanced at least to the
+			 * indentation level, or the block fits. */
+			cancelledTokens++;
 		} else {
-			enqueue(new IndentationToken(width, offset));
+			stream.addIndentation(width, offset);
 			totalSize += width;
+			enforceBufferLimits();
 		}
 		return this;
 	}
@@ -615,10 +1197,11 @@ public class Layouter<Exc extends Exception> {
 
 		checkNotFinished();
 
-		if (delimStack.isEmpty()) {
+		if (direct()) {
 			out.mark(o);
 		} else {
-			enqueue(new MarkToken(o));
+			stream.addMark(o);
+			enforceBufferLimits();
 		}
 		return this;
 	}
@@ -638,7 +1221,35 @@ public class Layouter<Exc extends Exception> {
 
 		checkNotFinished();
 
+		if (delimStack.isEmpty()) {
+			advanceLeft();
+		}
+		out.flush();
+		pending = false;
+		return this;
+	}
+
+	/**
+	 * Output all material kept in buffers, including material in blocks
+	 * that have not been ended, and flush the backend.  All blocks and 
+	 * breaks that are still waiting to see whether they fit on the line 
+	 * are broken.  This is what happens when a bound set with 
+	 * {@link #setLatencyBound(int, long, TimeUnit)} is reached.
+	 * 
+	 * @return this
+	 * @since 0.8.0
+	 */
+	public Layouter<Exc> flushPending() throws Exc {
+		LOG.trace("flushPending");
+
+		checkNotFinished();
+
+		while (!delimStack.isEmpty()) {
+			setInfiniteSize(popBottom());
+		}
+		advanceLeft();
 		out.flush();
+		pending = false;
 		return this;
 	}
 
@@ -686,7 +1297,7 @@ public class Layouter<Exc extends Exception> {
 		try {
 			checkNotFinished();
 
-			if (!delimStack.isEmpty()) {
+			if (!delimStack.isEmpty() || openBlocks > 0) {
 				throw new UnbalancedBlocksException();
 			} else {
 				advanceLeft();
@@ -829,6 +1440,31 @@ public class Layouter<Exc extends Exception> {
 		return begin(BreakConsistency.CONSISTENT, IndentationBase.FROM_IND, indent);
 	}
 
+	/**
+	 * Begin a block which is always broken. Add this Layouter's default
+	 * indentation to the indentation level, relative to the current 
+	 * position.
+	 * 
+	 * @return this
+	 * @since 0.8.0
+	 */
+	public Layouter<Exc> beginB() {
+		return begin(BreakConsistency.BROKEN, IndentationBase.FROM_POS, defaultInd);
+	}
+
+	/**
+	 * Begin a block which is always broken. Add <code>indent</code> to 
+	 * the indentation level, relative to the current position.
+	 * 
+	 * @param indent
+	 *            the indentation for this block
+	 * @return this
+	 * @since 0.8.0
+	 */
+	public Layouter<Exc> beginB(int indent) {
+		return begin(BreakConsistency.BROKEN, IndentationBase.FROM_POS, indent);
+	}
+
 
 	/**
 	 * Print a break with zero offset.
@@ -857,6 +1493,12 @@ public class Layouter<Exc extends Exception> {
 	 * @return this
 	 */
 	public Layouter<Exc> nl() throws Exc {
+		if (mode == LayoutMode.FLAT) {
+			LOG.trace("nl");
+			checkNotFinished();
+			out.printNewLine();
+			return this;
+		}
 		return brk(largeSize);
 	}
 
@@ -870,6 +1512,152 @@ public class Layouter<Exc extends Exception> {
 		return this.ind(0, 0);
 	}
 
+	/**
+	 * Output the decimal representation of <code>i</code>, as given by
+	 * {@link String#valueOf(int)}, without creating a String.
+	 * 
+	 * @param i
+	 *            the number to print
+	 * @return this
+	 * @since 0.8.0
+	 */
+	public Layouter<Exc> print(int i) throws Exc {
+		scratch.setLength(0);
+		return print(scratch.append(i));
+	}
+
+	/**
+	 * Output the decimal representation of <code>l</code>, as given by
+	 * {@link String#valueOf(long)}, without creating a String.
+	 * 
+	 * @param l
+	 *            the number to print
+	 * @return this
+	 * @since 0.8.0
+	 */
+	public Layouter<Exc> print(long l) throws Exc {
+		scratch.setLength(0);
+		return print(scratch.append(l));
+	}
+
+	/**
+	 * Output the representation of <code>d</code> given by 
+	 * {@link String#valueOf(double)}, without creating a String.
+	 * 
+	 * @param d
+	 *            the number to print
+	 * @return this
+	 * @since 0.8.0
+	 */
+	public Layouter<Exc> print(double d) throws Exc {
+		scratch.setLength(0);
+		return print(scratch.append(d));
+	}
+
+	/**
+	 * Output the character <code>c</code>, which should not be a newline,
+	 * without creating a String.
+	 * 
+	 * @param c
+	 *            the character to print
+	 * @return this
+	 * @since 0.8.0
+	 */
+	public Layouter<Exc> print(char c) throws Exc {
+		scratchChars[0] = c;
+		return print(scratchChars, 0, 1);
+	}
+
+	/**
+	 * Output <code>true</code> or <code>false</code>.
+	 * 
+	 * @param b
+	 *            the value to print
+	 * @return this
+	 * @since 0.8.0
+	 */
+	public Layouter<Exc> print(boolean b) throws Exc {
+		return print(b ? "true" : "false");
+	}
+
+	/**
+	 * Output the characters of <code>cs</code>, which should not contain
+	 * newline characters.  Strings are passed to {@link #print(String)},
+	 * the characters of any other sequence are copied, and no String is
+	 * created.
+	 * 
+	 * @param cs
+	 *            the characters to print
+	 * @return this
+	 * @since 0.8.0
+	 */
+	public Layouter<Exc> print(CharSequence cs) throws Exc {
+		if (cs instanceof String) {
+			return print((String) cs);
+		}
+		int length = cs.length();
+		return print(toScratch(cs, length), 0, length);
+	}
+
+	/**
+	 * Output the words of <code>cs</code> as a paragraph, filling each
+	 * line with as many words as fit.  The words are the runs of 
+	 * characters other than space, tab, newline, vertical tab, form 
+	 * feed and carriage return.  This has the same effect as printing 
+	 * the words with {@link #print(String)}, separated by 
+	 * <code>brk(1,0)</code>, usually in a block begun with 
+	 * {@link #beginIInd(int)}, but no String is created for the words, 
+	 * and the words between the first and the last one are buffered as 
+	 * a single token.  Nothing is printed if there are no words.
+	 * 
+	 * @param cs
+	 *            the text to print
+	 * @return this
+	 * @since 0.8.0
+	 */
+	public Layouter<Exc> printWords(CharSequence cs) throws Exc {
+		LOG.trace("printWords: {}", cs);
+
+		checkNotFinished();
+
+		int n = cs.length();
+		char[] buf = toScratch(cs, n);
+		/* Squeeze the words together, one space apart */
+		int length = 0;
+		int last = 0;
+		int words = 0;
+		boolean inWord = false;
+		for (int i = 0; i < n; i++) {
+			char c = buf[i];
+			if (c == ' ' || c == '\t' || c == '\n' 
+				|| c == '\u000B' || c == '\f' || c == '\r') {
+				inWord = false;
+			} else {
+				if (!inWord) {
+					if (words > 0) {
+						buf[length++] = ' ';
+					}
+					last = length;
+					words++;
+					inWord = true;
+				}
+				buf[length++] = c;
+			}
+		}
+
+		if (words == 0) {
+			return this;
+		} else if (words == 1) {
+			return print(buf, 0, length);
+		} else if (words == 2) {
+			print(buf, 0, last - 1);
+		} else {
+			fill(buf, 0, last - 1);
+		}
+		brk(1, 0);
+		return print(buf, last, length - last);
+	}
+
 	/**
 	 * Layout prefromated text. This amounts to a (consistent) block with
 	 * indentation 0, where each line of <code>s</code> (separated by \n) gets
@@ -899,275 +1687,456 @@ public class Layouter<Exc extends Exception> {
 		return this;
 	}
 
-	// PRIVATE METHODS -----------------------------------------------
-
-	/* Delimiter Stack handling */
-
-	/** Push an OpenBlockToken or BreakToken onto the delimStack */
-	private void push(StreamToken t) {
-		delimStack.add(t);
-	}
-
-	/** Pop the topmost Token from the delimStack */
-	private StreamToken pop() {
-		try {
-			return (StreamToken) (delimStack.remove(delimStack.size() - 1));
-		} catch (IndexOutOfBoundsException e) {
-			throw new UnbalancedBlocksException();
-		}
-	}
-
 	/**
-	 * Remove and return the token from the <em>bottom</em> of the delimStack
+	 * Output the characters read from <code>r</code> until its end, 
+	 * which should not contain newline characters.  This has the same 
+	 * effect as {@link #print(String)} with a String containing the 
+	 * characters, but they are read and passed on in chunks, and never
+	 * held in memory all at once: as soon as they are known not to fit 
+	 * on the line, the chunks are sent on to the backend as they are
+	 * read.  This is meant for large values, such as encoded binary
+	 * data, of which the size is not known beforehand.  The Reader is 
+	 * not closed.
+	 * 
+	 * @param r
+	 *            the Reader to read the characters from
+	 * @return this
+	 * @throws IOException
+	 *            if reading from <code>r</code> fails
+	 * @since 0.8.0
 	 */
-	private StreamToken popBottom() {
-		try {
-			return (StreamToken) (delimStack.remove(0));
-		} catch (IndexOutOfBoundsException e) {
-			throw new UnbalancedBlocksException();
+	public Layouter<Exc> print(Reader r) throws Exc, IOException {
+		LOG.trace("print: {}", r);
+
+		char[] buf = readBuffer();
+		int held = 0;
+		int n;
+		while ((n = r.read(buf, held, buf.length - held)) >= 0) {
+			n += held;
+			held = heldBack(buf, n);
+			if (n > held) {
+				print(buf, 0, n - held);
+			}
+			if (held > 0) {
+				buf[0] = buf[n - 1];
+			}
 		}
-	}
-
-	/** Return the top of the delimStack, without popping it. */
-	private StreamToken top() {
-		try {
-			return (StreamToken) delimStack.get(delimStack.size() - 1);
-		} catch (IndexOutOfBoundsException e) {
-			throw new UnbalancedBlocksException();
+		if (held > 0) {
+			print(buf, 0, held);
 		}
-	}
-
-	/* stream handling */
-
-	/** Put a StreamToken into the stream (at the end). */
-	private void enqueue(StreamToken t) {
-		stream.add(t);
+		return this;
 	}
 
 	/**
-	 * Send tokens from <code>stream<code> to <code>out</code> as long
-	 * as there are tokens left and their size is known.
+	 * Layout preformatted text read from <code>r</code> until its end, 
+	 * like {@link #pre(String)}.  The text is read in chunks, and each
+	 * line is passed on like the text given to {@link #print(Reader)}, 
+	 * so that the text is never held in memory all at once.  The Reader
+	 * is not closed.
+	 * 
+	 * @param r
+	 *            the Reader to read the pre-formatted text from
+	 * @return this
+	 * @throws IOException
+	 *            if reading from <code>r</code> fails
+	 * @since 0.8.0
 	 */
-	private void advanceLeft() throws Exc {
-		StreamToken t;
-		while (!stream.isEmpty()
-				&& ((t = (StreamToken) stream.get(0)).followingSizeKnown())) {
-			t.print();
-			stream.remove(0);
-			totalOutput += t.size();
+	public Layouter<Exc> pre(Reader r) throws Exc, IOException {
+		LOG.trace("pre: {}", r);
+
+		char[] buf = readBuffer();
+		beginC(0);
+		int held = 0;
+		int n;
+		while ((n = r.read(buf, held, buf.length - held)) >= 0) {
+			n += held;
+			held = heldBack(buf, n);
+			int start = 0;
+			for (int i = 0; i < n - held; i++) {
+				if (buf[i] == '\n') {
+					if (i > start) {
+						print(buf, start, i - start);
+					}
+					nl();
+					start = i + 1;
+				}
+			}
+			if (n - held > start) {
+				print(buf, start, n - held - start);
+			}
+			if (held > 0) {
+				buf[0] = buf[n - 1];
+			}
 		}
-	}
+		if (held > 0) {
+			print(buf, 0, held);
+		}
+		end();
 
-	// STREAM TOKEN CLASSES -----------------------------------------
+		return this;
+	}
 
-	/**
-	 * A stream token.
-	 */
-	private abstract class StreamToken {
-		/** Send this token to the Printer {@link #out}. */
-		abstract void print() throws Exc;
+	/** Returns the space needed by <code>s</code>, as measured by the
+	 * backend. */
+	int measure(String s) {
+		return back.measure(s);
+	}
 
-		/** Return the size of this token if the block is not broken. */
-		abstract int size();
+	// PRIVATE METHODS -----------------------------------------------
 
-		/**
-		 * Return the `section' size. For an OpenBlockToken, this is the size of
-		 * the whole block, if it is not broken. For a BreakToken, it is the
-		 * size of the material up to the next corresponding BreakToken or
-		 * CloseBlockToken. Otherwise it is the same as size(). This might only
-		 * be known after several more tokens have been read. If the value is
-		 * guaranteed to be larger than what fits on a line, some large value
-		 * might be returned instead of the precise size.
-		 */
-		
-		/* This is actually called only in classes under SizeCalculatingToken, which
-		 * overrides it.  But it's nicer to think of it in conjunction with 
-		 * followingSizeKnown() below.*/
-		@SuppressWarnings("unused")
-		int followingSize() {
-			return size();
+	/** Copy the characters of <code>cs</code> to 
+	 * <code>scratchChars</code>, which is grown if needed, and return
+	 * that. */
+	private char[] toScratch(CharSequence cs, int length) {
+		if (length > scratchChars.length) {
+			scratchChars = new char[Math.max(length, 2 * scratchChars.length)];
 		}
-
-		/**
-		 * Returns whether the followingSize is already known. That is the case
-		 * if either a corresponding next BreakToken or CloseBlockToken has been
-		 * encountered, or if the material is known not to fit on a line.
-		 */
-		boolean followingSizeKnown() {
-			return true;
+		if (cs instanceof String) {
+			((String) cs).getChars(0, length, scratchChars, 0);
+		} else if (cs instanceof StringBuilder) {
+			((StringBuilder) cs).getChars(0, length, scratchChars, 0);
+		} else {
+			for (int i = 0; i < length; i++) {
+				scratchChars[i] = cs.charAt(i);
+			}
 		}
+		return scratchChars;
+	}
 
-		/**
-		 * Indicate that the corresponding next BreakToken or CloseBlockToken
-		 * has been encountered. After this, followingSizeKnown() will return
-		 * the correct value.
-		 */
-		void setEnd() {
-			throw new UnsupportedOperationException();
+	/**
+	 * Output the words in <code>buf[offset..offset+length-1]</code>,
+	 * which are separated by single spaces, each space standing for a
+	 * <code>brk(1,0)</code>.  There are at least two words.  The 
+	 * section of each of these breaks ends with the following word, so
+	 * the sizes of all of them are known right away, and the words are
+	 * buffered as one <code>FILL</code> token.
+	 */
+	private void fill(char[] buf, int offset, int length) throws Exc {
+		if (mode != LayoutMode.PRETTY) {
+			int start = offset;
+			for (int i = offset; i <= offset + length; i++) {
+				if (i == offset + length || buf[i] == ' ') {
+					if (start > offset) {
+						brk(1, 0);
+					}
+					print(buf, start, i - start);
+					start = i + 1;
+				}
+			}
+			return;
 		}
 
-		/**
-		 * Indicate that the followingSize is guaranteed to be larger than the
-		 * line width, and that it can thus be set to some large value.
-		 */
-		void setInfiniteSize() {
-			throw new UnsupportedOperationException();
+		/* measure each word once, for the layout and the Printer */
+		int words = 0;
+		int width = -1;
+		int start = offset;
+		for (int i = offset; i <= offset + length; i++) {
+			if (i == offset + length || buf[i] == ' ') {
+				if (words == scratchWidths.length) {
+					scratchWidths = Arrays.copyOf(scratchWidths, 2 * words);
+				}
+				int w = back.measure(buf, start, i - start);
+				scratchWidths[words++] = w;
+				width += 1 + w;
+				start = i + 1;
+			}
 		}
 
-		/**
-		 * Returns whether this is a <code>BreakToken</code>. It returns
-		 * <code>false</code>, and is overriden by <code>BreakToken</code>
-		 * to return true.
-		 */
-		boolean isBreakToken() {
-			return false;
+		if (direct()) {
+			printFill(buf, offset, length, scratchWidths, 0);
+			totalSize += width;
+			totalOutput += width;
+		} else {
+			if (!delimStack.isEmpty()) {
+				/* the first break ends the section of the previous one */
+				int s = top();
+				if (isBreakToken(s)) {
+					pop();
+					stream.setEnd(s, totalSize + scratchWidths[0]);
+				}
+			}
+			stream.addFill(buf, offset, length, scratchWidths, words, width);
+			totalSize += width;
+			resolveOversized(0);
+			enforceBufferLimits();
 		}
 	}
 
-	/** A token corresponding to a <code>print</code> call. */
-	private class StringToken extends StreamToken {
-		String s;
-
-		StringToken(String s) {
-			this.s = s;
-		}
-
-		void print() throws Exc {
-			out.print(s);
+	/**
+	 * Send the words of a <code>FILL</code> token in 
+	 * <code>buf[offset..offset+length-1]</code> to the Printer, with a
+	 * break before each but the first.  The widths of the words are
+	 * taken from <code>widths</code>, starting at <code>w</code>.
+	 */
+	private void printFill(char[] buf, int offset, int length, 
+			               int[] widths, int w) throws Exc {
+		int start = offset;
+		for (int i = offset; i <= offset + length; i++) {
+			if (i == offset + length || buf[i] == ' ') {
+				int width = widths[w++];
+				if (start > offset) {
+					out.printBreak(1, 0, 1 + width);
+				}
+				out.print(buf, start, i - start, width);
+				start = i + 1;
+			}
 		}
+	}
 
-		int size() {
-			return back.measure(s);
+	/** Return <code>scratchChars</code>, grown to hold a chunk read by
+	 * {@link #print(Reader)} or {@link #pre(Reader)}. */
+	private char[] readBuffer() {
+		if (scratchChars.length < READ_CHUNK) {
+			scratchChars = new char[READ_CHUNK];
 		}
+		return scratchChars;
 	}
 
-	/** A token corresponding to an <code>ind</code> call. */
-	private class IndentationToken extends StreamToken {
-		protected int width;
+	/** Return 1 if the last of the <code>n</code> characters in 
+	 * <code>buf</code> is the first half of a surrogate pair, which is 
+	 * then held back to be passed on with the next chunk, or else 0. */
+	private static int heldBack(char[] buf, int n) {
+		return n > 1 && Character.isHighSurrogate(buf[n - 1]) ? 1 : 0;
+	}
 
-		protected int offset;
+	/* Delimiter Stack handling */
 
-		IndentationToken(int width, int offset) {
-			this.width = width;
-			this.offset = offset;
+	/** Return whether output can be sent to the Printer directly, i.e.
+	 * no token is waiting for its size to be determined.  Tokens left in
+	 * the stream by the beginning of a <code>BROKEN</code> block are sent
+	 * on first. */
+	private boolean direct() throws Exc {
+		if (!delimStack.isEmpty()) {
+			return false;
 		}
-
-		void print() throws Exc {
-			out.indent(width, offset);
+		if (!stream.isEmpty()) {
+			advanceLeft();
+		} else if (totalOutput > REBASE_LIMIT) {
+			rebase();
 		}
-
-		int size() {
-			return width;
+		if (latencyBounded) {
+			checkLatency();
 		}
+		return true;
 	}
 
-	/** Superclass of tokens which calculate their followingSize. */
-	private abstract class SizeCalculatingToken extends StreamToken {
-		protected int begin = 0;
-
-		/** negative means that end has not been set yet. */
-		protected int end = -1;
+	/** Push an OPEN_BLOCK or BREAK token onto the delimStack */
+	private void push(int t) {
+		delimStack.push(t);
+	}
 
-		SizeCalculatingToken() {
-			begin = totalSize;
-		}
+	/** Pop the topmost token from the delimStack */
+	private int pop() {
+		return delimStack.pop();
+	}
 
-		int followingSize() {
-			return end - begin;
-		}
+	/**
+	 * Remove and return the token from the <em>bottom</em> of the delimStack
+	 */
+	private int popBottom() {
+		return delimStack.popBottom();
+	}
 
-		boolean followingSizeKnown() {
-			return end >= 0;
-		}
+	/** Return the top of the delimStack, without popping it. */
+	private int top() {
+		return delimStack.top();
+	}
 
-		void setEnd() {
-			this.end = totalSize;
-		}
+	/* stream handling */
 
-		void setInfiniteSize() {
-			end = begin + largeSize;
+	/**
+	 * Force out the tokens that are known not to fit on the current 
+	 * line: as long as the buffered material, plus <code>ahead</code>
+	 * more that is known to follow, needs more space than is left on 
+	 * the line, the outermost waiting block or break must be broken.
+	 */
+	private void resolveOversized(int ahead) throws Exc {
+		while (totalSize + ahead - totalOutput > out.space()
+				&& !delimStack.isEmpty()) {
+			setInfiniteSize(popBottom());
+			advanceLeft();
 		}
 	}
 
-	/** A token corresponding to a <code>brk</code> call. */
-	private class BreakToken extends SizeCalculatingToken {
-		protected int width;
-
-		protected int offset;
-
-		BreakToken(int width, int offset) {
-			this.width = width;
-			this.offset = offset;
+	/**
+	 * Record the buffer usage, and while it exceeds the limits set with
+	 * {@link #setBufferLimits(int, int)}, break the outermost waiting 
+	 * block or break.  When no more are waiting, the stream is empty.
+	 */
+	private void enforceBufferLimits() throws Exc {
+		int tokens = stream.size();
+		int chars = stream.charsInUse();
+		if (tokens > peakBufferedTokens) {
+			peakBufferedTokens = tokens;
 		}
-
-		int size() {
-			return width;
+		if (chars > peakBufferedChars) {
+			peakBufferedChars = chars;
 		}
-
-		void print() throws Exc {
-			out.printBreak(width, offset, followingSize());
+		while ((stream.size() > maxBufferedTokens
+				|| stream.charsInUse() > maxBufferedChars)
+			   && !delimStack.isEmpty()) {
+			setInfiniteSize(popBottom());
+			advanceLeft();
 		}
-
-		boolean isBreakToken() {
-			return true;
+		if (latencyBounded) {
+			checkLatency();
 		}
 	}
 
-	/** A token corresponding to a <code>begin</code> call. */
-	private class OpenBlockToken extends SizeCalculatingToken {
-		protected BreakConsistency cons;
-
-		protected IndentationBase indBase;
-
-		protected int indent;
-		
-		OpenBlockToken(BreakConsistency consistent, IndentationBase fromPos, int indent) {
-			this.cons = consistent;
-			this.indBase = fromPos;
-			this.indent = indent;
+	/**
+	 * Send on and flush all pending output if a bound set with
+	 * {@link #setLatencyBound(int, long, TimeUnit)} is reached.
+	 */
+	private void checkLatency() throws Exc {
+		if (latencyTokens > 0 && stream.size() >= latencyTokens) {
+			flushPending();
+		} else if (latencyNanos > 0) {
+			long now = System.nanoTime();
+			if (!pending) {
+				pending = true;
+				pendingSince = now;
+			} else if (now - pendingSince >= latencyNanos) {
+				flushPending();
+			}
 		}
+	}
 
-		int size() {
-			return 0;
+	/**
+	 * Send tokens from <code>stream<code> to <code>out</code> as long
+	 * as there are tokens left and their size is known.
+	 */
+	private void advanceLeft() throws Exc {
+		int t;
+		out.startBatch();
+		while (!stream.isEmpty()
+				&& followingSizeKnown(t = stream.first())) {
+			printToken(t);
+			totalOutput += size(t);
+			stream.removeFirst();
 		}
-
-		void print() throws Exc {
-			out.openBlock(cons,indBase, 
-						  indent, followingSize());
+		out.endBatch();
+		if (totalOutput > REBASE_LIMIT) {
+			rebase();
 		}
 	}
 
-	/** A token corresponding to an <code>end</code> call. */
-	private class CloseBlockToken extends StreamToken {
-
-		CloseBlockToken() {
-		}
+	/**
+	 * Subtract <code>totalOutput</code> from both totals and from the 
+	 * positions in the buffered tokens.  Only differences of these are
+	 * ever used, and all buffered positions are at least 
+	 * <code>totalOutput</code>, so this changes nothing but the range
+	 * of the values.
+	 */
+	private void rebase() {
+		stream.rebase(totalOutput);
+		totalSize -= totalOutput;
+		totalOutput = 0;
+	}
 
-		void print() throws Exc {
+	// STREAM TOKENS -------------------------------------------------
+
+	/** Send the token <code>t</code> to the Printer {@link #out}. */
+	private void printToken(int t) throws Exc {
+		switch (stream.opcode(t)) {
+		case STRING:
+			out.print(stream.string(t), stream.width(t));
+			break;
+		case CHARS:
+			out.print(stream.chars(), stream.offset(t), stream.length(t),
+					  stream.width(t));
+			break;
+		case FILL:
+			printFill(stream.chars(), stream.offset(t), stream.length(t),
+					  stream.wordWidths(), stream.begin(t));
+			break;
+		case BREAK:
+			out.printBreak(stream.width(t), stream.offset(t), 
+						   followingSize(t));
+			break;
+		case INDENTATION:
+			out.indent(stream.width(t), stream.offset(t));
+			break;
+		case OPEN_BLOCK:
+			out.openBlock(stream.consistency(t), stream.indentationBase(t),
+						  stream.offset(t), followingSize(t));
+			break;
+		case CLOSE_BLOCK:
 			out.closeBlock();
+			break;
+		case MARK:
+			out.mark(stream.mark(t));
+			break;
+		default:
+			throw new AssertionError();
 		}
+	}
 
-		int size() {
+	/** Return the size of the token <code>t</code> if the block is not 
+	 * broken. */
+	private int size(int t) {
+		switch (stream.opcode(t)) {
+		case STRING:
+		case CHARS:
+		case FILL:
+		case BREAK:
+		case INDENTATION:
+			return stream.width(t);
+		default:
 			return 0;
 		}
-
 	}
 
-	/** A token corresponding to a <code>mark</code> call. */
-	private class MarkToken extends StreamToken {
-		protected Object o;
+	/**
+	 * Return the `section' size of a BREAK or OPEN_BLOCK token. For an
+	 * OPEN_BLOCK, this is the size of the whole block, if it is not broken.
+	 * For a BREAK, it is the size of the material up to the next
+	 * corresponding BREAK or CLOSE_BLOCK. This might only be known after
+	 * several more tokens have been read. If the value is guaranteed to be
+	 * larger than what fits on a line, some large value might be returned
+	 * instead of the precise size.
+	 */
+	private int followingSize(int t) {
+		return stream.end(t) - stream.begin(t);
+	}
 
-		MarkToken(Object o) {
-			this.o = o;
+	/**
+	 * Returns whether the followingSize of token <code>t</code> is already
+	 * known. That is the case if either a corresponding next BREAK or
+	 * CLOSE_BLOCK has been encountered, or if the material is known not to
+	 * fit on a line.  Tokens other than BREAK and OPEN_BLOCK don't have
+	 * a followingSize, so it is trivially known for them.
+	 */
+	private boolean followingSizeKnown(int t) {
+		switch (stream.opcode(t)) {
+		case BREAK:
+		case OPEN_BLOCK:
+			return stream.end(t) >= 0;
+		default:
+			return true;
 		}
+	}
 
-		int size() {
-			return 0;
-		}
+	/**
+	 * Indicate that the corresponding next BREAK or CLOSE_BLOCK for token
+	 * <code>t</code> has been encountered. After this, followingSizeKnown()
+	 * will return the correct value.
+	 */
+	private void setEnd(int t) {
+		stream.setEnd(t, totalSize);
+	}
 
-		void print() throws Exc {
-			out.mark(o);
-		}
+	/**
+	 * Indicate that the followingSize of token <code>t</code> is guaranteed
+	 * to be larger than the line width, and that it can thus be set to some
+	 * large value.
+	 */
+	private void setInfiniteSize(int t) {
+		stream.setEnd(t, stream.begin(t) + largeSize);
+	}
+
+	/** Returns whether <code>t</code> is a <code>BREAK</code> token. */
+	private boolean isBreakToken(int t) {
+		return stream.opcode(t) == BREAK;
 	}
 
 }
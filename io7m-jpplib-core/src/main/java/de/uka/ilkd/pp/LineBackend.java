@@ -0,0 +1,79 @@
+//This file is part of the Java™ Pretty Printer Library (JPPlib)
+//Copyright (c) 2009, Martin Giese
+//All rights reserved.
+//
+//Redistribution and use in source and binary forms, with or without 
+//modification, are permitted provided that the following conditions are met:
+// 
+// * Redistributions of source code must retain the above copyright 
+//   notice, this list of conditions and the following disclaimer.
+// * Redistributions in binary form must reproduce the above copyright 
+//   notice, this list of conditions and the following disclaimer in the 
+//   documentation and/or other materials provided with the distribution.
+// * Neither the name of the author nor the names of his contributors 
+//   may be used to endorse or promote products derived from this 
+//   software without specific prior written permission.
+// 
+//THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+//AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE 
+//IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+//ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE 
+//LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+//CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF 
+//SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+//INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+//CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+//ARISING IN ANY WAY OUT OF THE USE OF THIS  SOFTWARE, EVEN IF ADVISED OF 
+//THE POSSIBILITY OF SUCH DAMAGE.
+
+package de.uka.ilkd.pp;
+
+/**
+ * A {@link Backend} that accepts whole lines of output at once.  If
+ * the backend of a {@link Layouter} implements this interface, the
+ * text, spaces, and indentation of each line are assembled in a buffer
+ * whenever the Layouter sends on buffered material, and handed to 
+ * {@link #printLine(char[], int, int)} in one call when the line ends,
+ * instead of being sent piece by piece through {@link #print(String)}
+ * and {@link #newLine()}.
+ * 
+ * <p>The part of a line assembled so far is sent through 
+ * {@link #print(char[], int, int)} before the Layouter method that 
+ * produced it returns, and before any call to {@link #mark(Object)}, 
+ * {@link #flush()}, or {@link #close()}.  So the output seen by the 
+ * backend at any time is the same as for a plain Backend.  Material
+ * that the Layouter does not need to buffer is still sent piece by 
+ * piece.
+ * 
+ * <p>Backends that only implement {@link Backend}, or that return 
+ * <code>false</code> from {@link #acceptsLines()}, keep receiving 
+ * their output piece by piece.
+ *
+ * @param <Exc> The type of exceptions that might be thrown by 
+ * this backend.
+ * @since 0.8.0
+ */
+public interface LineBackend<Exc extends Exception> extends Backend<Exc> {
+	/**
+	 * Append the characters <code>buf[offset..offset+length-1]</code>
+	 * to the output, followed by a new line.  The characters contain no 
+	 * newlines.  They must not be retained after the call returns, as
+	 * <code>buf</code> is reused by the caller.
+	 * 
+	 * @param buf the buffer holding the line
+	 * @param offset the index of the first character of the line
+	 * @param length the number of characters in the line
+	 */
+	void printLine(char[] buf, int offset, int length) throws Exc;
+
+	/**
+	 * Returns whether lines should be assembled for this backend.  If
+	 * not, it is fed piece by piece like a plain {@link Backend}.  This
+	 * is asked when a {@link Layouter} is created or reset.
+	 * 
+	 * <p>The default implementation returns <code>true</code>.
+	 */
+	default boolean acceptsLines() {
+		return true;
+	}
+}
@@ -0,0 +1,135 @@
+//This file is part of the Java™ Pretty Printer Library (JPPlib)
+//Copyright (c) 2009, Martin Giese
+//All rights reserved.
+//
+//Redistribution and use in source and binary forms, with or without 
+//modification, are permitted provided that the following conditions are met:
+// 
+// * Redistributions of source code must retain the above copyright 
+//   notice, this list of conditions and the following disclaimer.
+// * Redistributions in binary form must reproduce the above copyright 
+//   notice, this list of conditions and the following disclaimer in the 
+//   documentation and/or other materials provided with the distribution.
+// * Neither the name of the author nor the names of his contributors 
+//   may be used to endorse or promote products derived from this 
+//   software without specific prior written permission.
+// 
+//THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+//AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE 
+//IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+//ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE 
+//LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+//CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF 
+//SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+//INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+//CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+//ARISING IN ANY WAY OUT OF THE USE OF THIS  SOFTWARE, EVEN IF ADVISED OF 
+//THE POSSIBILITY OF SUCH DAMAGE.
+
+package de.uka.ilkd.pp;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/** A {@link Backend} which writes all output to a file, encoded as 
+ * UTF-8, through a window of the file mapped into memory.  When the 
+ * window is full, the next part of the file is mapped, so writing 
+ * never goes through a system call, and the operating system writes
+ * the pages back to the file in its own time.  Mapping a window 
+ * extends the file beyond the output, so {@link #close()} truncates
+ * it to the number of bytes written.  If the output is not closed, 
+ * the file is left with trailing zero bytes.
+ *
+ * <p>Java provides no way to unmap a window, so the memory is only
+ * released when the garbage collector reclaims it.  On platforms which
+ * do not allow truncating a file that is still mapped, {@link #close()}
+ * might fail.
+ *
+ * <p>The {@link #mark(Object o)} method does nothing in this 
+ * implementation.  There is a method {@link #count()} which returns 
+ * the number of characters written by this so far.
+ * @since 0.8.0
+ */
+
+public class MappedFileBackend extends Utf8Backend {
+
+    /** The default size of the mapped window */
+    public static final int DEFAULT_WINDOW_SIZE = 1 << 24;
+
+    /** The size of the array characters are encoded into, before they
+     * are copied to the window */
+    private static final int ENCODER_BUFFER_SIZE = 8192;
+
+    protected FileChannel channel;
+
+    /** The size of the mapped windows */
+    private final int windowSize;
+
+    /** The currently mapped window, or <code>null</code> */
+    private MappedByteBuffer window;
+
+    /** The position in the file up to which output has been written */
+    private long position;
+
+    /** Create a backend writing to the file <code>file</code>, which is
+     * created, or truncated if it exists. */
+    public MappedFileBackend(Path file,int lineWidth) throws IOException {
+	this(FileChannel.open(file, StandardOpenOption.CREATE,
+			      StandardOpenOption.TRUNCATE_EXISTING,
+			      StandardOpenOption.READ, 
+			      StandardOpenOption.WRITE),
+	     lineWidth, DEFAULT_WINDOW_SIZE);
+    }
+
+    /** Create a backend writing to <code>channel</code>, from its 
+     * current position on, through windows of <code>windowSize</code> 
+     * bytes.  The channel must be open for reading and writing. */
+    public MappedFileBackend(FileChannel channel,int lineWidth,
+	    int windowSize) throws IOException {
+	super(lineWidth, 
+	      Math.max(4, Math.min(windowSize, ENCODER_BUFFER_SIZE)));
+	if (windowSize <= 0) {
+	    throw new IllegalArgumentException("windowSize must be positive");
+	}
+	this.channel = channel;
+	this.windowSize = windowSize;
+	this.position = channel.position();
+    }
+
+    void write(ByteBuffer b) throws IOException {
+	int limit = b.limit();
+	while (b.hasRemaining()) {
+	    if (window == null || !window.hasRemaining()) {
+		window = channel.map(FileChannel.MapMode.READ_WRITE, 
+				     position, windowSize);
+	    }
+	    int n = Math.min(b.remaining(), window.remaining());
+	    b.limit(b.position() + n);
+	    window.put(b);
+	    b.limit(limit);
+	    position += n;
+	}
+    }
+
+    /** Writes the buffered output, truncates the file to the output 
+     * written and closes it. */
+    public void close() throws IOException {
+	finishEncoder();
+	window = null;
+	channel.truncate(position);
+	channel.position(position);
+	channel.close();
+    }
+
+    /** Writes the buffered output to the mapped window, where it is 
+     * visible to other readers of the file.  This does not force it to
+     * the storage device. */
+    public void flush() throws IOException {
+	flushEncoder();
+    }
+
+}
@@ -0,0 +1,83 @@
+//This file is part of the Java™ Pretty Printer Library (JPPlib)
+//Copyright (c) 2009, Martin Giese
+//All rights reserved.
+//
+//Redistribution and use in source and binary forms, with or without 
+//modification, are permitted provided that the following conditions are met:
+// 
+// * Redistributions of source code must retain the above copyright 
+//   notice, this list of conditions and the following disclaimer.
+// * Redistributions in binary form must reproduce the above copyright 
+//   notice, this list of conditions and the following disclaimer in the 
+//   documentation and/or other materials provided with the distribution.
+// * Neither the name of the author nor the names of his contributors 
+//   may be used to endorse or promote products derived from this 
+//   software without specific prior written permission.
+// 
+//THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+//AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE 
+//IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+//ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE 
+//LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+//CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF 
+//SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+//INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+//CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+//ARISING IN ANY WAY OUT OF THE USE OF THIS  SOFTWARE, EVEN IF ADVISED OF 
+//THE POSSIBILITY OF SUCH DAMAGE.
+
+package de.uka.ilkd.pp;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+/** A {@link Backend} which writes all output to a java.io.OutputStream,
+ * encoded as UTF-8.  The characters are encoded directly into a byte
+ * array, which is written to the stream whenever it is full, and on
+ * {@link #flush()} and {@link #close()}.  The bytes written are the same
+ * as those written by an OutputStreamWriter for UTF-8, but there is no
+ * need for one, nor for a buffer around the stream.
+ * The {@link #mark(Object o)} method does nothing in this implementation.
+ * There is a method {@link #count()} which returns the number of 
+ * characters written by this so far.
+ * @since 0.8.0
+ */
+
+public class OutputStreamBackend extends Utf8Backend {
+
+    /** The default size of the byte buffer */
+    public static final int DEFAULT_BUFFER_SIZE = 8192;
+
+    protected OutputStream out;
+
+    public OutputStreamBackend(OutputStream out,int lineWidth) {
+	this(out, lineWidth, DEFAULT_BUFFER_SIZE);
+    }
+
+    /** Create a backend writing to <code>out</code> through a buffer of
+     * <code>bufferSize</code> bytes, which must be at least 4. */
+    public OutputStreamBackend(OutputStream out,int lineWidth,
+	    int bufferSize) {
+	super(lineWidth, bufferSize);
+	this.out = out;
+    }
+
+    void write(ByteBuffer b) throws IOException {
+	out.write(b.array(), b.arrayOffset() + b.position(), b.remaining());
+	b.position(b.limit());
+    }
+
+    /** Writes the buffered output and closes this backend */
+    public void close() throws IOException {
+	finishEncoder();
+	out.close();
+    }
+
+    /** Writes the buffered output and flushes the stream */
+    public void flush() throws IOException {
+	flushEncoder();
+	out.flush();
+    }
+
+}
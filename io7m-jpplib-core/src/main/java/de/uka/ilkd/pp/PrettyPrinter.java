@@ -0,0 +1,222 @@
+//This file is part of the Java™ Pretty Printer Library (JPPlib)
+//Copyright (c) 2009, Martin Giese
+//All rights reserved.
+//
+//Redistribution and use in source and binary forms, with or without 
+//modification, are permitted provided that the following conditions are met:
+// 
+// * Redistributions of source code must retain the above copyright 
+//   notice, this list of conditions and the following disclaimer.
+// * Redistributions in binary form must reproduce the above copyright 
+//   notice, this list of conditions and the following disclaimer in the 
+//   documentation and/or other materials provided with the distribution.
+// * Neither the name of the author nor the names of his contributors 
+//   may be used to endorse or promote products derived from this 
+//   software without specific prior written permission.
+// 
+//THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+//AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE 
+//IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+//ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE 
+//LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+//CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF 
+//SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+//INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+//CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+//ARISING IN ANY WAY OUT OF THE USE OF THIS  SOFTWARE, EVEN IF ADVISED OF 
+//THE POSSIBILITY OF SUCH DAMAGE.
+
+package de.uka.ilkd.pp;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/** A thread-safe service to pretty-print arbitrary objects.
+ * The {@link #render(Object, int)} methods lay out an object using
+ * {@link DataLayouter#print(Object)} and return or append the result.
+ *
+ * <p>{@link Layouter}s are not thread-safe, and setting one up for
+ * every small object is comparatively costly.  A PrettyPrinter
+ * therefore keeps a bounded pool of {@link DataLayouter}s, each with
+ * its own {@link StringBackend}, which are {@link Layouter#reset() reset}
+ * and reused.  A thread takes a layouter out of the pool for the duration
+ * of one call, and returns it afterwards.  If the pool is empty, a new
+ * layouter is created; if it is full when a layouter is returned, that
+ * layouter is dropped.  The pool is a lock-free array of slots, so no
+ * thread ever blocks in it, and it does not rely on thread-local
+ * state, which makes it equally suitable for platform and virtual 
+ * threads.
+ *
+ * <p>Instances are meant to be long-lived and shared, e.g.
+ * <pre>
+ * static final PrettyPrinter PP = new PrettyPrinter();
+ * ...
+ * log.debug(PP.render(data, 80));
+ * </pre>
+ *
+ * @since 0.8.0
+ */
+public class PrettyPrinter {
+
+	/**
+	 * = 2 : The default indentation, in particular for Map entries.
+	 */
+	public static final int DEFAULT_INDENTATION = 2;
+
+	/**
+	 * The default number of pooled layouters: twice the number of
+	 * available processors, but at least 4.
+	 */
+	public static final int DEFAULT_POOL_SIZE = 
+		Math.max(4, 2 * Runtime.getRuntime().availableProcessors());
+
+	/**
+	 * = 65536 : Layouters whose output buffer has grown beyond this many
+	 * characters are not returned to the pool, so that a single large
+	 * document does not pin memory.
+	 */
+	public static final int MAX_RETAINED_CHARS = 65536;
+
+	/** A pooled layouter together with the backend it writes to. */
+	private static final class Entry {
+		final StringBuilder buffer;
+		final StringBackend back;
+		final DataLayouter<NoExceptions> layouter;
+
+		Entry(int indentation) {
+			buffer = new StringBuilder(256);
+			back = new StringBackend(buffer, 80);
+			layouter = new DataLayouter<NoExceptions>(back, indentation);
+		}
+	}
+
+	/** The default indentation of the layouters */
+	private final int indentation;
+
+	/** The pool.  Empty slots are <code>null</code>. */
+	private final AtomicReferenceArray<Entry> pool;
+
+	/** Create a PrettyPrinter with the default indentation and pool 
+	 * size. */
+	public PrettyPrinter() {
+		this(DEFAULT_INDENTATION, DEFAULT_POOL_SIZE);
+	}
+
+	/** Create a PrettyPrinter with the given indentation and the default
+	 * pool size.
+	 * @param indentation the default indentation of the layouters
+	 */
+	public PrettyPrinter(int indentation) {
+		this(indentation, DEFAULT_POOL_SIZE);
+	}
+
+	/** Create a PrettyPrinter.
+	 * @param indentation the default indentation of the layouters
+	 * @param poolSize the maximum number of idle layouters kept
+	 */
+	public PrettyPrinter(int indentation, int poolSize) {
+		if (poolSize < 0) {
+			throw new IllegalArgumentException("negative pool size " + poolSize);
+		}
+		this.indentation = indentation;
+		this.pool = new AtomicReferenceArray<Entry>(poolSize);
+	}
+
+	/**
+	 * Pretty print an object according to its type. See the
+	 * documentation of {@link DataLayouter#print(Object)} for a
+	 * desciption of the layout chosen for various data types.
+	 * 
+	 * @param o
+	 *            the object to be pretty printed
+	 * @param width
+	 *            the maximum line width
+	 * @return the pretty-printed String representation of <code>o</code>
+	 */
+	public String render(Object o, int width) {
+		Entry e = layOut(o, width);
+		String result = e.buffer.toString();
+		release(e);
+		return result;
+	}
+
+	/**
+	 * Pretty print an object according to its type, and append the
+	 * result to <code>out</code>.  The layout is complete before 
+	 * anything is appended to <code>out</code>.
+	 * 
+	 * @param o
+	 *            the object to be pretty printed
+	 * @param out
+	 *            where to append the result
+	 * @param width
+	 *            the maximum line width
+	 * @throws IOException
+	 *            if appending to <code>out</code> fails
+	 */
+	public void render(Object o, Appendable out, int width) 
+		throws IOException 
+	{
+		Entry e = layOut(o, width);
+		try {
+			out.append(e.buffer);
+		} finally {
+			release(e);
+		}
+	}
+
+	/** Lay out <code>o</code> into the buffer of a pooled entry.  If
+	 * laying out fails, the entry is not returned to the pool. */
+	private Entry layOut(Object o, int width) {
+		Entry e = acquire();
+		e.back.reset(width);
+		e.layouter.reset().print(o).close();
+		return e;
+	}
+
+	/** Take an entry from the pool, or create a new one if there is
+	 * none.  Threads start looking at different slots to keep them
+	 * from all competing for the first one. */
+	private Entry acquire() {
+		int n = pool.length();
+		if (n > 0) {
+			int start = probe(n);
+			for (int i = 0; i < n; i++) {
+				int slot = (start + i) % n;
+				if (pool.get(slot) != null) {
+					Entry e = pool.getAndSet(slot, null);
+					if (e != null) {
+						return e;
+					}
+				}
+			}
+		}
+		return new Entry(indentation);
+	}
+
+	/** Return an entry to the pool, unless its buffer has become too
+	 * large or the pool is full. */
+	private void release(Entry e) {
+		if (e.buffer.capacity() > MAX_RETAINED_CHARS) {
+			return;
+		}
+		int n = pool.length();
+		if (n > 0) {
+			int start = probe(n);
+			for (int i = 0; i < n; i++) {
+				int slot = (start + i) % n;
+				if (pool.get(slot) == null 
+					&& pool.compareAndSet(slot, null, e)) {
+					return;
+				}
+			}
+		}
+	}
+
+	/** The slot at which the current thread starts looking. */
+	private static int probe(int n) {
+		long id = Thread.currentThread().getId();
+		int h = (int) (id ^ (id >>> 32)) * 0x9E3779B9;
+		return (h >>> 1) % n;
+	}
+}
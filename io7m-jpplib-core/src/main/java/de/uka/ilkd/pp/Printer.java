@@ -31,11 +31,30 @@ package de.uka.ilkd.pp;
 import static de.uka.ilkd.pp.IndentationStack.*;
 import static de.uka.ilkd.pp.IndentationStack.BreakDecision.*;
 
+import java.util.Arrays;
+
 /** The intermediate layer of the pretty printing library.  Using the
  * block size information provided by the {@link Layouter} class, this
  * decides where to insert line breaks.  It tries to break as few
  * blocks as possible.  
  *
+ * <p>If the backend is a {@link LineBackend} which
+ * {@link LineBackend#acceptsLines() accepts lines}, output produced 
+ * between calls to {@link #startBatch()} and {@link #endBatch()} is assembled
+ * into whole lines in a buffer before it is sent on.  Otherwise, it is
+ * sent on piece by piece.
+ *
+ * <p>Spaces, whether from indentation, breaks that are not taken or
+ * {@link #indent(int, int)}, are not written immediately, but kept
+ * pending until the next non-empty text fragment.  Spaces that are
+ * followed by a line break or the end of the output are never written,
+ * so there is no trailing whitespace on any line.  A mark made while
+ * spaces are pending is kept pending with them.  It is sent on after
+ * the spaces that precede it when text follows, and at the end of the
+ * line when a line break follows.  If the
+ * backend has a {@link Backend#tabWidth()}, spaces at the start of a
+ * line are written as tabs as far as possible.
+ *
  * <p>Exceptions of type {@code Exc} thrown by the backend will get
  * passed through to the Layouter.
  *
@@ -45,39 +64,121 @@ import static de.uka.ilkd.pp.IndentationStack.BreakDecision.*;
 class Printer<Exc extends Exception> {
 	
 	/** total line length available */
-	private final int lineWidth;
+	private int lineWidth;
 
 	/** position in current line. */
 	private int pos;
 
-	/** total chars written */
-	private int totalOut = 0;
-
 	/** Back-end for the pretty-printed output */
 	private Backend<Exc> back;
 
+	/** The backend, if it accepts whole lines, <code>null</code>
+	 * otherwise */
+	private LineBackend<Exc> lineBack;
+
+	/** Whether output is assembled in <code>line</code>.  Only set 
+	 * between {@link #startBatch()} and {@link #endBatch()}, and only if
+	 * <code>lineBack</code> is set. */
+	private boolean batching = false;
+
+	/** The current line, while <code>batching</code> */
+	private char[] line = new char[128];
+
+	/** The number of characters in <code>line</code> */
+	private int lineLength = 0;
+
+	/** The number of spaces that have been accounted for in 
+	 * <code>pos</code>, but not yet written */
+	private int pendingSpaces = 0;
+
+	/** Marks made while spaces were pending, which are sent on after
+	 * those spaces, or before the next line break */
+	private Object[] pendingMarks = new Object[4];
+
+	/** The number of pending spaces when each of the 
+	 * <code>pendingMarks</code> was made */
+	private int[] pendingMarkSpaces = new int[4];
+
+	/** The number of <code>pendingMarks</code> */
+	private int pendingMarkCount = 0;
+
+	/** Whether nothing has been written on the current line yet */
+	private boolean lineStart = true;
+
+	/** The tab width of the backend, 0 for no tabs */
+	private int tabWidth;
+
 
 	/** stack to remember value of <code>pos</code> and 
 	 * breaking decisions in nested blocks */
-	private IndentationStack indentStack = new IndentationStack();
+	private IndentationStack indentStack;
 	
 	/** Create a printer.  It will write its output to <code>writer</code>.
 	 * Lines have a maximum width of <code>lineWidth</code>. 
 	 * @param back the Backend to write output to
+	 * @param capacity the initial capacity of the indentation stack
 	 * */
-	Printer(Backend<Exc> back) {
-		this.back = back;
-		lineWidth = back.lineWidth();
+	Printer(Backend<Exc> back, int capacity) {
+		setBackend(back);
 		pos = 0;
+		indentStack = new IndentationStack(capacity);
+	}
+
+	/** Reset this printer to the state after construction, but writing
+	 * to <code>back</code>.  
+	 * @param retained the capacity the indentation stack may keep
+	 */
+	void reset(Backend<Exc> back, int retained) {
+		setBackend(back);
+		batching = false;
+		lineLength = 0;
+		pendingSpaces = 0;
+		Arrays.fill(pendingMarks, 0, pendingMarkCount, null);
+		pendingMarkCount = 0;
+		lineStart = true;
+		pos = 0;
+		indentStack.clear(retained);
 	}
 
 	/** Write the String <code>s</code> to <code>out</code> 
 	 * @param s the String to write
+	 * @param width the space needed by <code>s</code>, as measured by 
+	 *        the backend
 	 */
-	void print(String s) throws Exc {
-		back.print(s);
-		pos += back.measure(s);
-		totalOut += back.measure(s);
+	void print(String s, int width) throws Exc {
+		int n = s.length();
+		if (n > 0 && pendingSpaces > 0) {
+			writePendingSpaces();
+		}
+		if (batching) {
+			reserve(n);
+			s.getChars(0, n, line, lineLength);
+			lineLength += n;
+		} else {
+			back.print(s);
+		}
+		lineStart = false;
+		pos += width;
+	}
+
+	/** Write the characters <code>buf[offset..offset+length-1]</code> 
+	 * to <code>out</code> 
+	 * @param width the space needed by the characters, as measured by 
+	 *        the backend
+	 */
+	void print(char[] buf, int offset, int length, int width) throws Exc {
+		if (length > 0 && pendingSpaces > 0) {
+			writePendingSpaces();
+		}
+		if (batching) {
+			reserve(length);
+			System.arraycopy(buf, offset, line, lineLength, length);
+			lineLength += length;
+		} else {
+			back.print(buf, offset, length);
+		}
+		lineStart = false;
+		pos += width;
 	}
 
 	/** Begin a block.  The parameter <code>followingLength</code> gives
@@ -90,7 +191,8 @@ class Printer<Exc extends Exception> {
 	void openBlock(Layouter.BreakConsistency cons,
 			        Layouter.IndentationBase indBase, 
 			        int indent, int followingLength) {
-		if (followingLength > space()) {
+		if (cons == Layouter.BreakConsistency.BROKEN 
+			|| followingLength > space()) {
 				indentStack.push(indentBase(indBase) + indent, 
 						         BreakDecision.fromBreakConsistency(cons));
 		} else {
@@ -98,6 +200,12 @@ class Printer<Exc extends Exception> {
 		}
 	}
 
+	/** Return whether the innermost block is consistent and broken, so
+	 * that any break in it will be taken. */
+	boolean topBroken() {
+		return !indentStack.isEmpty() && indentStack.topConsistent();
+	}
+
 	/** end a block */
 	void closeBlock() {
 		indentStack.pop();
@@ -127,11 +235,55 @@ class Printer<Exc extends Exception> {
 		}
 	}
 
-	/** Mark this position in the text.  This is simply sent 
-	 * through to the backend.
+	/** Write <code>width</code> spaces, as for a break that is not 
+	 * taken. */
+	void printSpaces(int width) throws Exc {
+		writeSpaces(width);
+		pos += width;
+	}
+
+	/** Start a new line without indentation. */
+	void printNewLine() throws Exc {
+		pos = 0;
+		newLine();
+	}
+
+	/** Start assembling output into lines, if the backend is a
+	 * {@link LineBackend}.  To be called before sending a sequence of 
+	 * tokens. */
+	void startBatch() {
+		batching = lineBack != null;
+	}
+
+	/** Send any partial line assembled since {@link #startBatch()} to
+	 * the backend, and stop assembling lines. */
+	void endBatch() throws Exc {
+		flushLine();
+		batching = false;
+	}
+
+	/** Mark this position in the text.  This is sent through to the
+	 * backend.  If spaces are pending, the mark is kept pending too, 
+	 * and sent after those spaces once text follows, so that the 
+	 * position seen by the backend is the one the mark was made at.
+	 * If a line break follows instead, the mark is sent at the end of 
+	 * the line, and the spaces are dropped.
 	 */
 	void mark(Object o) throws Exc {
-		back.mark(o);
+		if (pendingSpaces == 0) {
+			flushLine();
+			back.mark(o);
+			return;
+		}
+		if (pendingMarkCount == pendingMarks.length) {
+			pendingMarks = Arrays.copyOf(pendingMarks, 
+					2 * pendingMarkCount);
+			pendingMarkSpaces = Arrays.copyOf(pendingMarkSpaces, 
+					2 * pendingMarkCount);
+		}
+		pendingMarks[pendingMarkCount] = o;
+		pendingMarkSpaces[pendingMarkCount] = pendingSpaces;
+		pendingMarkCount++;
 	}
 
 	/** Add a number of spaces.  The number of spaces 
@@ -152,13 +304,23 @@ class Printer<Exc extends Exception> {
 		}
 	}
 
-	/** Close the output stream. */
+	/** Close the output stream.  Pending spaces are dropped. */
 	void close() throws Exc {
+		pendingSpaces = 0;
+		writePendingMarks();
 		back.close();
 	}
 
-	/** Flush the output stream. */
+	/** Flush the output stream.  Pending marks are sent on, after the
+	 * spaces that precede them, so a line break following the flush
+	 * leaves those spaces at the end of the line. */
 	void flush() throws Exc {
+		if (pendingMarkCount > 0) {
+			int n = pendingMarkSpaces[pendingMarkCount - 1];
+			writeMarkedSpaces();
+			pendingSpaces -= n;
+		}
+		flushLine();
 		back.flush();
 	}
 
@@ -187,37 +349,126 @@ class Printer<Exc extends Exception> {
 		}
 	}
 	
-	/** Start a new line and indent according to <code>pos</code>
+	/** Start a new line and indent according to <code>pos</code>.
+	 * Pending spaces at the end of the old line are dropped, and
+	 * the indentation of the new one is left pending.
 	 */
 	private void newLine() throws Exc {
-		back.newLine();
-		totalOut++;
-		if (pos > 0) {
-			writeSpaces(pos);
+		pendingSpaces = 0;
+		if (pendingMarkCount > 0) {
+			writePendingMarks();
+		}
+		if (batching) {
+			lineBack.printLine(line, 0, lineLength);
+			lineLength = 0;
+		} else {
+			back.newLine();
+		}
+		lineStart = true;
+		writeSpaces(pos > 0 ? pos : 0);
+	}
+
+	/** Add <code>n</code> spaces to the pending ones. */
+	private void writeSpaces(int n) {
+		pendingSpaces += n;
+	}
+
+	/** Write the pending spaces, and send the pending marks after the
+	 * spaces that precede them. */
+	private void writePendingSpaces() throws Exc {
+		int n = pendingSpaces;
+		pendingSpaces = 0;
+		if (pendingMarkCount > 0) {
+			n -= pendingMarkSpaces[pendingMarkCount - 1];
+			writeMarkedSpaces();
+		}
+		writeSpaceRun(n);
+	}
+
+	/** Write the spaces preceding the pending marks, sending each mark
+	 * after its spaces.  <code>pendingSpaces</code> is not changed. */
+	private void writeMarkedSpaces() throws Exc {
+		int written = 0;
+		for (int i = 0; i < pendingMarkCount; i++) {
+			writeSpaceRun(pendingMarkSpaces[i] - written);
+			written = pendingMarkSpaces[i];
+			flushLine();
+			back.mark(pendingMarks[i]);
+			pendingMarks[i] = null;
 		}
+		pendingMarkCount = 0;
 	}
 
-	/** how many spaces are in SPACES */
-	private static final int NR_SPACES = 128;
+	/** Send the pending marks without writing any spaces. */
+	private void writePendingMarks() throws Exc {
+		flushLine();
+		for (int i = 0; i < pendingMarkCount; i++) {
+			back.mark(pendingMarks[i]);
+			pendingMarks[i] = null;
+		}
+		pendingMarkCount = 0;
+	}
+
+	/** Write <code>n</code> spaces, as tabs and spaces if they start 
+	 * the line and the backend wants tabs. */
+	private void writeSpaceRun(int n) throws Exc {
+		if (lineStart && tabWidth > 0 && n >= tabWidth) {
+			writeTabs(n / tabWidth);
+			n %= tabWidth;
+		}
+		lineStart = false;
+		if (n == 0) {
+			return;
+		}
+		if (batching) {
+			reserve(n);
+			Arrays.fill(line, lineLength, lineLength + n, ' ');
+			lineLength += n;
+		} else {
+			back.writeSpaces(n);
+		}
+	}
 
-	/** a String containing <code>NR_SPACES</code> spaces */
-	private static final String SPACES;
+	/** Write <code>n</code> tab characters. */
+	private void writeTabs(int n) throws Exc {
+		if (batching) {
+			reserve(n);
+			Arrays.fill(line, lineLength, lineLength + n, '\t');
+			lineLength += n;
+		} else {
+			while (n > Spaces.NR_SPACES) {
+				back.print(Spaces.TABS, 0, Spaces.NR_SPACES);
+				n -= Spaces.NR_SPACES;
+			}
+			back.print(Spaces.TABS, 0, n);
+		}
+	}
+
+	/** Use <code>back</code> for output from now on. */
+	@SuppressWarnings("unchecked")
+	private void setBackend(Backend<Exc> back) {
+		this.back = back;
+		this.lineBack = back instanceof LineBackend 
+				&& ((LineBackend<Exc>) back).acceptsLines()
+			? (LineBackend<Exc>) back : null;
+		lineWidth = back.lineWidth();
+		tabWidth = back.tabWidth();
+	}
 
-	/* initialize SPACES */
-	static {
-		StringBuilder sb = new StringBuilder(NR_SPACES);
-		for (int i = 0; i < NR_SPACES; i++) {
-			sb.append(' ');
+	/** Make room for <code>n</code> more characters in the line buffer */
+	private void reserve(int n) {
+		if (lineLength + n > line.length) {
+			line = Arrays.copyOf(line, 
+					Math.max(2 * line.length, lineLength + n));
 		}
-		SPACES = sb.toString();
 	}
 
-	private void writeSpaces(int n) throws Exc {
-		while (n > NR_SPACES) {
-			back.print(SPACES);
-			n -= NR_SPACES;
+	/** Send the part of the current line assembled so far to the 
+	 * backend. */
+	private void flushLine() throws Exc {
+		if (lineLength > 0) {
+			back.print(line, 0, lineLength);
+			lineLength = 0;
 		}
-		back.print(SPACES.substring(0, n));
-		totalOut += n;
 	}
 }
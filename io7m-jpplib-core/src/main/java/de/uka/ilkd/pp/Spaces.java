@@ -0,0 +1,76 @@
+//This file is part of the Java™ Pretty Printer Library (JPPlib)
+//Copyright (c) 2009, Martin Giese
+//All rights reserved.
+//
+//Redistribution and use in source and binary forms, with or without 
+//modification, are permitted provided that the following conditions are met:
+// 
+// * Redistributions of source code must retain the above copyright 
+//   notice, this list of conditions and the following disclaimer.
+// * Redistributions in binary form must reproduce the above copyright 
+//   notice, this list of conditions and the following disclaimer in the 
+//   documentation and/or other materials provided with the distribution.
+// * Neither the name of the author nor the names of his contributors 
+//   may be used to endorse or promote products derived from this 
+//   software without specific prior written permission.
+// 
+//THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+//AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE 
+//IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+//ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE 
+//LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+//CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF 
+//SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+//INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+//CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+//ARISING IN ANY WAY OUT OF THE USE OF THIS  SOFTWARE, EVEN IF ADVISED OF 
+//THE POSSIBILITY OF SUCH DAMAGE.
+
+package de.uka.ilkd.pp;
+
+import java.util.Arrays;
+
+/** Shared runs of spaces and tabs for writing indentation without 
+ * allocating.  Backends that can write a range of a <code>char</code> 
+ * array use {@link #CHARS}, others print one of the cached Strings.
+ */
+final class Spaces {
+
+	/** how many spaces are in {@link #CHARS}, and the length of the 
+	 * longest cached String */
+	static final int NR_SPACES = 128;
+
+	/** <code>NR_SPACES</code> spaces.  Must not be modified. */
+	static final char[] CHARS = new char[NR_SPACES];
+
+	/** <code>NR_SPACES</code> tabs.  Must not be modified. */
+	static final char[] TABS = new char[NR_SPACES];
+
+	/** STRINGS[n] consists of <code>n</code> spaces */
+	private static final String[] STRINGS = new String[NR_SPACES + 1];
+
+	static {
+		Arrays.fill(CHARS, ' ');
+		Arrays.fill(TABS, '\t');
+		for (int i = 0; i <= NR_SPACES; i++) {
+			STRINGS[i] = new String(CHARS, 0, i);
+		}
+	}
+
+	private Spaces() {
+	}
+
+	/** Print <code>n</code> spaces to <code>back</code> using 
+	 * {@link Backend#print(String)}. */
+	static <Exc extends Exception> void print(Backend<Exc> back, int n) 
+		throws Exc 
+	{
+		while (n > NR_SPACES) {
+			back.print(STRINGS[NR_SPACES]);
+			n -= NR_SPACES;
+		}
+		if (n > 0) {
+			back.print(STRINGS[n]);
+		}
+	}
+}
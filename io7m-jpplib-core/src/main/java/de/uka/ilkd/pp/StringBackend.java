@@ -34,8 +34,12 @@ package de.uka.ilkd.pp;
  * implementation.  There is a method {@link #count()} which returns
  * the number of characters written by this so far.  
  * The method {@link #getString()} gets the output written so far.
+ * Lines, character ranges and spaces are appended directly only
+ * by a StringBackend itself, see {@link #acceptsLines()}.  In a 
+ * subclass, all output goes through {@link #print(String)} and
+ * {@link #newLine()}.
  */
-public class StringBackend implements Backend<NoExceptions> {
+public class StringBackend implements LineBackend<NoExceptions> {
 	/** The StringBuffer or StringBuilder output will be accumulated in.
 	 * Some of the implementations rely on this being either a StringBuilder
 	 * or StringBuffer, and all implementations in this class guarantee it.
@@ -50,6 +54,10 @@ public class StringBackend implements Backend<NoExceptions> {
      * by the implementation of {@link #count()}.
      */
     protected int initOutLength;
+
+    /** The width of a tab for indentation, or 0 to indent with spaces
+     * only.  See {@link #tabWidth()}. */
+    protected int tabWidth = 0;
     
     /** Create a new StringBackend.  This will append all output to
      * the given StringBuilder <code>sb</code>.    */
@@ -80,6 +88,40 @@ public class StringBackend implements Backend<NoExceptions> {
     	this(new StringBuilder(lineWidth),lineWidth);
     }
 
+    /** Discard the output written through this backend, so that it can
+     * be reused for another document.  Text that was in the 
+     * StringBuilder or StringBuffer before this backend was created is
+     * kept.
+     * @since 0.8.0
+     */
+    public void reset() {
+    	if (out instanceof StringBuilder) {
+    		((StringBuilder)out).setLength(initOutLength);
+    	} else {
+    		((StringBuffer)out).setLength(initOutLength);
+    	}
+    }
+
+    /** Discard the output written through this backend, and change the
+     * line width to <code>lineWidth</code>.  A {@link Layouter} using
+     * this backend must be reset after this, so that it picks up the
+     * new width.
+     * @since 0.8.0
+     */
+    public void reset(int lineWidth) {
+    	reset();
+    	this.lineWidth = lineWidth;
+    }
+
+    /** Indent lines with tabs of width <code>tabWidth</code>, or with
+     * spaces only if it is 0.  A {@link Layouter} using this backend 
+     * picks this up when it is created or reset.
+     * @since 0.8.0
+     */
+    public void setTabWidth(int tabWidth) {
+    	this.tabWidth = tabWidth;
+    }
+
     /** Append a String <code>s</code> to the output.  <code>s</code> 
      * contains no newlines. */
     public void print(String s) {
@@ -91,6 +133,43 @@ public class StringBackend implements Backend<NoExceptions> {
     	}
     }
 
+    /** Append the characters <code>buf[offset..offset+length-1]</code>
+     * to the output. */
+    public void print(char[] buf, int offset, int length) {
+    	if (!acceptsLines()) {
+    		print(new String(buf, offset, length));
+    	} else if (out instanceof StringBuilder) {
+    		((StringBuilder)out).append(buf, offset, length);
+    	} else {
+    		((StringBuffer)out).append(buf, offset, length);
+    	}
+    }
+
+    /** Append the characters <code>buf[offset..offset+length-1]</code>
+     * and a newline to the output. */
+    public void printLine(char[] buf, int offset, int length) {
+    	if (!acceptsLines()) {
+    		print(new String(buf, offset, length));
+    		newLine();
+    	} else if (out instanceof StringBuilder) {
+    		((StringBuilder)out).append(buf, offset, length).append('\n');
+    	} else {
+    		((StringBuffer)out).append(buf, offset, length).append('\n');
+    	}
+    }
+
+    /** Returns <code>true</code> only for a StringBackend itself, not
+     * for subclasses, so that subclasses which intercept the output in 
+     * {@link #print(String)} and {@link #newLine()} see all of it.  A
+     * subclass that also overrides {@link #printLine(char[], int, int)},
+     * {@link #print(char[], int, int)} and {@link #writeSpaces(int)},
+     * or does not intercept the output, may return <code>true</code>.
+     * @since 0.8.0
+     */
+    public boolean acceptsLines() {
+    	return getClass() == StringBackend.class;
+    }
+
     /** Start a new line. */
     public void newLine() {
     	try {
@@ -102,6 +181,27 @@ public class StringBackend implements Backend<NoExceptions> {
 		}
     }
 
+    /** Append <code>n</code> spaces to the output. */
+    public void writeSpaces(int n) {
+    	if (!acceptsLines()) {
+    		Spaces.print(this, n);
+    	} else if (out instanceof StringBuilder) {
+    		StringBuilder sb = (StringBuilder)out;
+    		while (n > Spaces.NR_SPACES) {
+    			sb.append(Spaces.CHARS, 0, Spaces.NR_SPACES);
+    			n -= Spaces.NR_SPACES;
+    		}
+    		sb.append(Spaces.CHARS, 0, n);
+    	} else {
+    		StringBuffer sb = (StringBuffer)out;
+    		while (n > Spaces.NR_SPACES) {
+    			sb.append(Spaces.CHARS, 0, Spaces.NR_SPACES);
+    			n -= Spaces.NR_SPACES;
+    		}
+    		sb.append(Spaces.CHARS, 0, n);
+    	}
+    }
+
     /** Closes this backend */
     public void close() {
     	return;
@@ -135,11 +235,26 @@ public class StringBackend implements Backend<NoExceptions> {
     	return lineWidth;
     }
 
+    /** Returns the width of a tab for indentation, or 0 */
+    public int tabWidth() {
+    	return tabWidth;
+    }
+
     /** Returns the space required to print the String <code>s</code> */
     public int measure(String s) {
     	return s.length();
     }
 
+    /** Returns the space required to print the given characters.  In
+     * a subclass, this is what {@link #measure(String)} returns for 
+     * them, so that the two agree if that is overridden. */
+    public int measure(char[] buf, int offset, int length) {
+    	if (getClass() == StringBackend.class) {
+    		return length;
+    	}
+    	return measure(new String(buf, offset, length));
+    }
+
     /** Returns the accumulated output */
     public String getString() {
     	return out.toString();
@@ -0,0 +1,596 @@
+//This file is part of the Java™ Pretty Printer Library (JPPlib)
+//Copyright (c) 2009, Martin Giese
+//All rights reserved.
+//
+//Redistribution and use in source and binary forms, with or without 
+//modification, are permitted provided that the following conditions are met:
+// 
+// * Redistributions of source code must retain the above copyright 
+//   notice, this list of conditions and the following disclaimer.
+// * Redistributions in binary form must reproduce the above copyright 
+//   notice, this list of conditions and the following disclaimer in the 
+//   documentation and/or other materials provided with the distribution.
+// * Neither the name of the author nor the names of his contributors 
+//   may be used to endorse or promote products derived from this 
+//   software without specific prior written permission.
+// 
+//THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+//AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE 
+//IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+//ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE 
+//LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+//CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF 
+//SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+//INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+//CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+//ARISING IN ANY WAY OUT OF THE USE OF THIS  SOFTWARE, EVEN IF ADVISED OF 
+//THE POSSIBILITY OF SUCH DAMAGE.
+
+package de.uka.ilkd.pp;
+
+import java.util.Arrays;
+
+/** The lookahead window of a {@link Layouter}.  Tokens that have
+ * been received by the Layouter, but not yet sent to the
+ * {@link Printer}, are kept here until the sizes of the blocks and
+ * breaks they belong to are known.
+ *
+ * <p>Instead of one object per token, the tokens are stored in a
+ * number of parallel arrays, which are used as a ring buffer.
+ * Every token is identified by a sequence number, which is assigned
+ * when it is added, and which does not change while the token is in
+ * the buffer, even if the arrays are grown.  The slot of a token in
+ * the arrays is its sequence number modulo the capacity, which is
+ * always a power of two.  Once the buffer has grown to the size
+ * needed by a layout, adding and removing tokens does not allocate
+ * any objects.
+ *
+ * <p>Text that is not given as a String, e.g. the digits of a number
+ * or a range of a <code>char</code> array, is copied into a character
+ * arena owned by the buffer.  The arena is reused as the tokens
+ * referring to it are removed, so such text does not cause any 
+ * allocation either once the arena is large enough.  Short text 
+ * following other text is appended to the latter in the arena, so 
+ * that runs of small <code>print</code> calls take up a single token.
+ *
+ * <p>Which of the slots of a token are meaningful depends on its
+ * opcode:
+ * <dl>
+ * <dt>{@link #STRING}</dt>
+ *   <dd>text: the printed String, width: its size as measured by
+ *       the backend</dd>
+ * <dt>{@link #CHARS}</dt>
+ *   <dd>offset, length: the position of the text in the arena, 
+ *       width: its size as measured by the backend</dd>
+ * <dt>{@link #BREAK}</dt>
+ *   <dd>width, offset, begin, end</dd>
+ * <dt>{@link #INDENTATION}</dt>
+ *   <dd>width, offset</dd>
+ * <dt>{@link #OPEN_BLOCK}</dt>
+ *   <dd>consistency, indentation base, offset (the indentation), 
+ *       begin, end</dd>
+ * <dt>{@link #CLOSE_BLOCK}</dt>
+ *   <dd>none</dd>
+ * <dt>{@link #MARK}</dt>
+ *   <dd>text: the object passed to <code>mark</code></dd>
+ * <dt>{@link #FILL}</dt>
+ *   <dd>offset, length: the position of the words in the arena, 
+ *       width: their size including the separating spaces,
+ *       begin, end: the position of the sizes of the words, as 
+ *       measured by the backend, in the array of word widths, and the
+ *       number of words</dd>
+ * </dl>
+ * The begin and end slots hold the total size of the material
+ * received by the Layouter at the time the token was received, resp.
+ * at the time the corresponding next break or block end was 
+ * received.  A negative end means that the latter has not happened
+ * yet.  Both are reduced by {@link #rebase(int)} when the totals grow
+ * large.
+ */
+class TokenBuffer {
+
+	/** A token corresponding to a <code>print</code> call. */
+	static final int STRING = 0;
+
+	/** A token corresponding to a <code>brk</code> call. */
+	static final int BREAK = 1;
+
+	/** A token corresponding to an <code>ind</code> call. */
+	static final int INDENTATION = 2;
+
+	/** A token corresponding to a <code>begin</code> call. */
+	static final int OPEN_BLOCK = 3;
+
+	/** A token corresponding to an <code>end</code> call. */
+	static final int CLOSE_BLOCK = 4;
+
+	/** A token corresponding to a <code>mark</code> call. */
+	static final int MARK = 5;
+
+	/** A token corresponding to a <code>print</code> call for text
+	 * that is not a String. */
+	static final int CHARS = 6;
+
+	/** A token for a run of words separated by single spaces, each
+	 * space standing for a <code>brk(1,0)</code>, from 
+	 * <code>printWords</code>.  The break after each word ends the 
+	 * section of the break before it. */
+	static final int FILL = 7;
+
+	/** Mask for the opcode in the <code>op</code> slot.  The remaining
+	 * bits hold the consistency and indentation base of 
+	 * <code>OPEN_BLOCK</code> tokens. */
+	private static final int OPCODE_MASK = 0x0F;
+	private static final int CONSISTENCY_SHIFT = 4;
+	private static final int BASE_SHIFT = 6;
+	private static final int FIELD_MASK = 0x03;
+
+	/* Cached, as values() returns a fresh copy on every call. */
+	private static final Layouter.BreakConsistency[] CONSISTENCIES =
+		Layouter.BreakConsistency.values();
+	private static final Layouter.IndentationBase[] BASES =
+		Layouter.IndentationBase.values();
+
+	private byte[] op;
+	private int[] width;
+	private int[] offset;
+	private int[] begin;
+	private int[] end;
+	private int[] length;
+	private Object[] text;
+
+	/** capacity - 1, capacity being a power of two */
+	private int mask;
+
+	/** sequence number of the first token in the buffer */
+	private int head = 0;
+
+	/** sequence number the next token added will get */
+	private int tail = 0;
+
+	/** Strings up to this length are copied to the arena to fuse
+	 * them with adjacent text, see {@link #fuseString(String, int)} */
+	static final int MAX_FUSED_STRING = 64;
+
+	/** Initial arena size per token of capacity */
+	static final int CHARS_PER_TOKEN = 4;
+
+	/** The arena for the text of <code>CHARS</code> and 
+	 * <code>FILL</code> tokens */
+	private char[] chars;
+
+	/** start of the text of the oldest token in the arena */
+	private int charsStart = 0;
+
+	/** end of the text of the newest token in the arena */
+	private int charsEnd = 0;
+
+	/** The widths of the words of <code>FILL</code> tokens, used like 
+	 * the character arena */
+	private int[] wordWidths = new int[16];
+
+	/** start of the widths of the oldest <code>FILL</code> token */
+	private int widthsStart = 0;
+
+	/** end of the widths of the newest <code>FILL</code> token */
+	private int widthsEnd = 0;
+
+	/** Create a buffer with room for at least <code>capacity</code>
+	 * tokens before it has to grow.  The character arena gets room for
+	 * {@link #CHARS_PER_TOKEN} characters per token. */
+	TokenBuffer(int capacity) {
+		allocate(roundUp(capacity));
+		chars = new char[CHARS_PER_TOKEN * op.length];
+	}
+
+	/** Remove all tokens.  If the buffer has grown beyond 
+	 * <code>retained</code> tokens, resp. the arena beyond 
+	 * {@link #CHARS_PER_TOKEN} times that many characters, they are 
+	 * shrunk back to that size. */
+	void clear(int retained) {
+		for (int t = head; t != tail; t++) {
+			text[t & mask] = null;
+		}
+		head = tail = 0;
+		charsStart = charsEnd = 0;
+		widthsStart = widthsEnd = 0;
+		int capacity = roundUp(retained);
+		if (op.length > capacity) {
+			allocate(capacity);
+		}
+		if (chars.length > CHARS_PER_TOKEN * capacity) {
+			chars = new char[CHARS_PER_TOKEN * capacity];
+		}
+		if (wordWidths.length > capacity) {
+			wordWidths = new int[capacity];
+		}
+	}
+
+	/** Return whether there are no tokens in the buffer. */
+	boolean isEmpty() {
+		return head == tail;
+	}
+
+	/** Return the number of tokens in the buffer. */
+	int size() {
+		return tail - head;
+	}
+
+	/** Return the number of characters of the tokens in the buffer
+	 * that are held in the arena. */
+	int charsInUse() {
+		return charsEnd - charsStart;
+	}
+
+	/** Return the sequence number of the oldest token in the buffer. */
+	int first() {
+		return head;
+	}
+
+	/** Return the sequence number of the newest token in the buffer. */
+	int last() {
+		return tail - 1;
+	}
+
+	/** Remove the oldest token from the buffer. */
+	void removeFirst() {
+		int i = head & mask;
+		if (inArena(op[i])) {
+			charsStart = offset[i] + length[i];
+			if (charsStart == charsEnd) {
+				charsStart = charsEnd = 0;
+			}
+		}
+		if (op[i] == FILL) {
+			widthsStart = begin[i] + end[i];
+			if (widthsStart == widthsEnd) {
+				widthsStart = widthsEnd = 0;
+			}
+		}
+		text[i] = null;
+		head++;
+	}
+
+	/** Remove the newest token from the buffer. */
+	void removeLast() {
+		int i = --tail & mask;
+		if (inArena(op[i])) {
+			charsEnd = offset[i];
+			if (charsStart == charsEnd) {
+				charsStart = charsEnd = 0;
+			}
+		}
+		if (op[i] == FILL) {
+			widthsEnd = begin[i];
+			if (widthsStart == widthsEnd) {
+				widthsStart = widthsEnd = 0;
+			}
+		}
+		text[i] = null;
+	}
+
+	// ADDING TOKENS ------------------------------------------------
+
+	int addString(String s, int width) {
+		return add(STRING, width, 0, 0, s);
+	}
+
+	/** Add a <code>CHARS</code> token, copying the text to the arena.
+	 * Empty text is added as an empty <code>STRING</code>, as the 
+	 * arena may be reset under a token taking up no room in it. */
+	int addChars(char[] buf, int off, int len, int width) {
+		if (len == 0) {
+			return addString("", width);
+		}
+		reserveChars(len);
+		System.arraycopy(buf, off, chars, charsEnd, len);
+		int t = add(CHARS, width, charsEnd, 0, null);
+		length[t & mask] = len;
+		charsEnd += len;
+		return t;
+	}
+
+	/** Add a <code>FILL</code> token, copying the words to the arena. 
+	 * The words are separated by single spaces, and their widths are
+	 * <code>widths[0..words-1]</code>. */
+	int addFill(char[] buf, int off, int len, 
+			    int[] widths, int words, int width) {
+		reserveChars(len);
+		System.arraycopy(buf, off, chars, charsEnd, len);
+		reserveWidths(words);
+		System.arraycopy(widths, 0, wordWidths, widthsEnd, words);
+		int t = add(FILL, width, charsEnd, widthsEnd, null);
+		length[t & mask] = len;
+		end[t & mask] = words;
+		charsEnd += len;
+		widthsEnd += words;
+		return t;
+	}
+
+	/** Append <code>s</code> to the text of the newest token, if that
+	 * is a <code>STRING</code> or <code>CHARS</code> token, so that
+	 * both are printed with one call.  The newest token becomes a
+	 * <code>CHARS</code> token.  To keep the copying cheap, this is 
+	 * only done if the Strings involved are short.
+	 * @return whether <code>s</code> was fused, otherwise it has to be
+	 *         added as a token of its own */
+	boolean fuseString(String s, int width) {
+		int len = s.length();
+		if (len > MAX_FUSED_STRING || !fusible(len)) {
+			return false;
+		}
+		s.getChars(0, len, chars, charsEnd);
+		fused(len, width);
+		return true;
+	}
+
+	/** Append the characters <code>buf[off..off+len-1]</code> to the 
+	 * text of the newest token, like {@link #fuseString(String, int)}.
+	 * @return whether the characters were fused */
+	boolean fuseChars(char[] buf, int off, int len, int width) {
+		if (!fusible(len)) {
+			return false;
+		}
+		System.arraycopy(buf, off, chars, charsEnd, len);
+		fused(len, width);
+		return true;
+	}
+
+	int addBreak(int width, int offset, int begin) {
+		return add(BREAK, width, offset, begin, null);
+	}
+
+	int addIndentation(int width, int offset) {
+		return add(INDENTATION, width, offset, 0, null);
+	}
+
+	int addOpenBlock(Layouter.BreakConsistency cons, 
+			         Layouter.IndentationBase indBase,
+			         int indent, int begin) {
+		return add(OPEN_BLOCK 
+				   | cons.ordinal() << CONSISTENCY_SHIFT
+				   | indBase.ordinal() << BASE_SHIFT,
+				   0, indent, begin, null);
+	}
+
+	int addCloseBlock() {
+		return add(CLOSE_BLOCK, 0, 0, 0, null);
+	}
+
+	int addMark(Object o) {
+		return add(MARK, 0, 0, 0, o);
+	}
+
+	// ACCESSING TOKENS ---------------------------------------------
+
+	int opcode(int t) {
+		return op[t & mask] & OPCODE_MASK;
+	}
+
+	int width(int t) {
+		return width[t & mask];
+	}
+
+	int offset(int t) {
+		return offset[t & mask];
+	}
+
+	int begin(int t) {
+		return begin[t & mask];
+	}
+
+	int end(int t) {
+		return end[t & mask];
+	}
+
+	void setEnd(int t, int end) {
+		this.end[t & mask] = end;
+	}
+
+	int length(int t) {
+		return length[t & mask];
+	}
+
+	/** Subtract <code>delta</code> from the begin and the known end of 
+	 * all BREAK and OPEN_BLOCK tokens. */
+	void rebase(int delta) {
+		for (int t = head; t != tail; t++) {
+			int i = t & mask;
+			int o = op[i] & OPCODE_MASK;
+			if (o == BREAK || o == OPEN_BLOCK) {
+				begin[i] -= delta;
+				if (end[i] >= 0) {
+					end[i] -= delta;
+				}
+			}
+		}
+	}
+
+	/** Return the arena holding the text of <code>CHARS</code> and
+	 * <code>FILL</code> tokens.  The array might be replaced when tokens
+	 * are added. */
+	char[] chars() {
+		return chars;
+	}
+
+	/** Return the array holding the word widths of <code>FILL</code>
+	 * tokens, starting at {@link #begin(int)}.  The array might be 
+	 * replaced when tokens are added. */
+	int[] wordWidths() {
+		return wordWidths;
+	}
+
+	String string(int t) {
+		return (String) text[t & mask];
+	}
+
+	Object mark(int t) {
+		return text[t & mask];
+	}
+
+	Layouter.BreakConsistency consistency(int t) {
+		return CONSISTENCIES[op[t & mask] >> CONSISTENCY_SHIFT & FIELD_MASK];
+	}
+
+	Layouter.IndentationBase indentationBase(int t) {
+		return BASES[op[t & mask] >> BASE_SHIFT & FIELD_MASK];
+	}
+
+	// PRIVATE METHODS -----------------------------------------------
+
+	/** Return whether text can be appended to the newest token, and if
+	 * so, turn it into a <code>CHARS</code> token and make room for 
+	 * <code>len</code> more characters after its text in the arena. */
+	private boolean fusible(int len) {
+		if (head == tail) {
+			return false;
+		}
+		int i = (tail - 1) & mask;
+		switch (op[i]) {
+		case CHARS:
+			reserveChars(len);
+			return true;
+		case STRING:
+			if (len == 0) {
+				return true;
+			}
+			String s = (String) text[i];
+			int n = s.length();
+			if (n > MAX_FUSED_STRING) {
+				return false;
+			}
+			reserveChars(n + len);
+			s.getChars(0, n, chars, charsEnd);
+			op[i] = CHARS;
+			offset[i] = charsEnd;
+			length[i] = n;
+			text[i] = null;
+			charsEnd += n;
+			return true;
+		default:
+			return false;
+		}
+	}
+
+	/** Account for <code>len</code> characters of the given width
+	 * copied to the arena after the text of the newest token. */
+	private void fused(int len, int w) {
+		int i = (tail - 1) & mask;
+		length[i] += len;
+		width[i] += w;
+		charsEnd += len;
+	}
+
+	private int add(int code, int w, int off, int beg, Object o) {
+		if (tail - head == op.length) {
+			grow();
+		}
+		int i = tail & mask;
+		op[i] = (byte) code;
+		width[i] = w;
+		offset[i] = off;
+		begin[i] = beg;
+		end[i] = -1;
+		text[i] = o;
+		return tail++;
+	}
+
+	/** Double the capacity, moving every token to the slot given by its
+	 * sequence number and the new capacity. */
+	private void grow() {
+		byte[] oldOp = op;
+		int[] oldWidth = width;
+		int[] oldOffset = offset;
+		int[] oldBegin = begin;
+		int[] oldEnd = end;
+		int[] oldLength = length;
+		Object[] oldText = text;
+		int oldMask = mask;
+
+		allocate(op.length * 2);
+		for (int t = head; t != tail; t++) {
+			int i = t & oldMask;
+			int j = t & mask;
+			op[j] = oldOp[i];
+			width[j] = oldWidth[i];
+			offset[j] = oldOffset[i];
+			begin[j] = oldBegin[i];
+			end[j] = oldEnd[i];
+			length[j] = oldLength[i];
+			text[j] = oldText[i];
+		}
+	}
+
+	private void allocate(int capacity) {
+		op = new byte[capacity];
+		width = new int[capacity];
+		offset = new int[capacity];
+		begin = new int[capacity];
+		end = new int[capacity];
+		length = new int[capacity];
+		text = new Object[capacity];
+		mask = capacity - 1;
+	}
+
+	/** Make room for <code>len</code> more characters at the end of the
+	 * arena, first by moving the text still in use to the start of the
+	 * arena, then by growing it. */
+	private void reserveChars(int len) {
+		if (charsEnd + len <= chars.length) {
+			return;
+		}
+		if (charsStart > 0) {
+			System.arraycopy(chars, charsStart, chars, 0, charsEnd - charsStart);
+			for (int t = head; t != tail; t++) {
+				int i = t & mask;
+				if (inArena(op[i])) {
+					offset[i] -= charsStart;
+				}
+			}
+			charsEnd -= charsStart;
+			charsStart = 0;
+		}
+		if (charsEnd + len > chars.length) {
+			chars = Arrays.copyOf(chars, 
+					Math.max(2 * chars.length, charsEnd + len));
+		}
+	}
+
+	/** Make room for <code>n</code> more word widths, like 
+	 * {@link #reserveChars(int)}. */
+	private void reserveWidths(int n) {
+		if (widthsEnd + n <= wordWidths.length) {
+			return;
+		}
+		if (widthsStart > 0) {
+			System.arraycopy(wordWidths, widthsStart, wordWidths, 0, 
+							 widthsEnd - widthsStart);
+			for (int t = head; t != tail; t++) {
+				int i = t & mask;
+				if (op[i] == FILL) {
+					begin[i] -= widthsStart;
+				}
+			}
+			widthsEnd -= widthsStart;
+			widthsStart = 0;
+		}
+		if (widthsEnd + n > wordWidths.length) {
+			wordWidths = Arrays.copyOf(wordWidths, 
+					Math.max(2 * wordWidths.length, widthsEnd + n));
+		}
+	}
+
+	/** Return whether a token with the given opcode has its text in 
+	 * the arena. */
+	private static boolean inArena(byte code) {
+		return code == CHARS || code == FILL;
+	}
+
+	private static int roundUp(int capacity) {
+		int c = 16;
+		while (c < capacity) {
+			c *= 2;
+		}
+		return c;
+	}
+}
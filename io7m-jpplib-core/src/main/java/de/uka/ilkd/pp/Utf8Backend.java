@@ -0,0 +1,172 @@
+//This file is part of the Java™ Pretty Printer Library (JPPlib)
+//Copyright (c) 2009, Martin Giese
+//All rights reserved.
+//
+//Redistribution and use in source and binary forms, with or without 
+//modification, are permitted provided that the following conditions are met:
+// 
+// * Redistributions of source code must retain the above copyright 
+//   notice, this list of conditions and the following disclaimer.
+// * Redistributions in binary form must reproduce the above copyright 
+//   notice, this list of conditions and the following disclaimer in the 
+//   documentation and/or other materials provided with the distribution.
+// * Neither the name of the author nor the names of his contributors 
+//   may be used to endorse or promote products derived from this 
+//   software without specific prior written permission.
+// 
+//THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+//AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE 
+//IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+//ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE 
+//LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+//CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF 
+//SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+//INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+//CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+//ARISING IN ANY WAY OUT OF THE USE OF THIS  SOFTWARE, EVEN IF ADVISED OF 
+//THE POSSIBILITY OF SUCH DAMAGE.
+
+package de.uka.ilkd.pp;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/** The common part of the backends which encode their output as UTF-8
+ * themselves.  The encoded bytes are handed to 
+ * {@link #write(ByteBuffer)} in chunks.
+ * The {@link #mark(Object o)} method does nothing in this implementation.
+ * There is a method {@link #count()} which returns the number of 
+ * characters written by this so far.
+ */
+
+abstract class Utf8Backend implements LineBackend<IOException> {
+
+    protected int lineWidth;
+    protected long count=0;
+    protected int tabWidth=0;
+
+    private final Utf8Encoder encoder;
+
+    /** Create a backend encoding into a heap buffer of 
+     * <code>bufferSize</code> bytes, which must be at least 4. */
+    Utf8Backend(int lineWidth, int bufferSize) {
+	this(lineWidth, ByteBuffer.allocate(bufferSize));
+    }
+
+    /** Create a backend encoding straight into <code>buffer</code>, 
+     * which must be empty and have room for at least 4 bytes. */
+    Utf8Backend(int lineWidth, ByteBuffer buffer) {
+	this.lineWidth = lineWidth;
+	this.encoder = new Utf8Encoder(buffer) {
+	    void write(ByteBuffer b) throws IOException {
+		Utf8Backend.this.write(b);
+	    }
+	};
+    }
+
+    /** Write the remaining encoded bytes of <code>b</code> to the 
+     * destination.  All of them must be consumed. */
+    abstract void write(ByteBuffer b) throws IOException;
+
+    /** Hand the bytes encoded so far to {@link #write(ByteBuffer)}.
+     * A high surrogate at the end of the output is kept, as it might
+     * be followed by its low surrogate. */
+    void flushEncoder() throws IOException {
+	encoder.flush();
+    }
+
+    /** Hand all remaining bytes to {@link #write(ByteBuffer)}, at
+     * the end of the output. */
+    void finishEncoder() throws IOException {
+	encoder.finish();
+    }
+
+    /** Indent lines with tabs of width <code>tabWidth</code>, or with
+     * spaces only if it is 0.  A {@link Layouter} using this backend 
+     * picks this up when it is created or reset.
+     */
+    public void setTabWidth(int tabWidth) {
+	this.tabWidth = tabWidth;
+    }
+
+    /** Append a String <code>s</code> to the output.  <code>s</code> 
+     * contains no newlines. */
+    public void print(String s) throws IOException {
+	encoder.encode(s);
+	count+=s.length();
+    }
+
+    /** Append the characters <code>buf[offset..offset+length-1]</code>
+     * to the output. */
+    public void print(char[] buf, int offset, int length) throws IOException {
+	encoder.encode(buf, offset, length);
+	count+=length;
+    }
+
+    /** Append the characters <code>buf[offset..offset+length-1]</code>
+     * and a newline to the output. */
+    public void printLine(char[] buf, int offset, int length) 
+    	throws IOException {
+	encoder.encode(buf, offset, length);
+	encoder.encodeAscii('\n', 1);
+	count+=length+1;
+    }
+
+    /** Start a new line. */
+    public void newLine() throws IOException {
+	encoder.encodeAscii('\n', 1);
+	count++;
+    }
+
+    /** Append <code>n</code> spaces to the output. */
+    public void writeSpaces(int n) throws IOException {
+	encoder.encodeAscii(' ', n);
+	count+=n;
+    }
+
+    /** Gets called to record a <code>mark()</code> call in the input. */
+    public void mark(Object o) {
+	return;
+    }
+
+    /** Returns the number of characters written through this backend,
+     * or <code>Integer.MAX_VALUE</code> if it is larger.  See
+     * {@link #longCount()}. */
+    public int count() {
+	return (int) Math.min(count, Integer.MAX_VALUE);
+    }
+
+    /** Returns the number of characters written through this backend.*/
+    public long longCount() {
+	return count;
+    }
+
+    /** Returns the available space per line */
+    public int lineWidth() {
+	return lineWidth;
+    }
+
+    /** Returns the width of a tab for indentation, or 0 */
+    public int tabWidth() {
+	return tabWidth;
+    }
+
+    /** Returns the space required to print the String <code>s</code> */
+    public int measure(String s) {
+	return s.length();
+    }
+
+    /** Returns the space required to print the given characters.  In
+     * a subclass outside this library, this is what 
+     * {@link #measure(String)} returns for them, so that the two agree
+     * if that is overridden. */
+    public int measure(char[] buf, int offset, int length) {
+	Class<?> c = getClass();
+	if (c == OutputStreamBackend.class || c == ChannelBackend.class
+	    || c == MappedFileBackend.class) {
+	    return length;
+	}
+	return measure(new String(buf, offset, length));
+    }
+
+}
@@ -0,0 +1,233 @@
+//This file is part of the Java™ Pretty Printer Library (JPPlib)
+//Copyright (c) 2009, Martin Giese
+//All rights reserved.
+//
+//Redistribution and use in source and binary forms, with or without 
+//modification, are permitted provided that the following conditions are met:
+// 
+// * Redistributions of source code must retain the above copyright 
+//   notice, this list of conditions and the following disclaimer.
+// * Redistributions in binary form must reproduce the above copyright 
+//   notice, this list of conditions and the following disclaimer in the 
+//   documentation and/or other materials provided with the distribution.
+// * Neither the name of the author nor the names of his contributors 
+//   may be used to endorse or promote products derived from this 
+//   software without specific prior written permission.
+// 
+//THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+//AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE 
+//IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+//ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE 
+//LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+//CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF 
+//SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+//INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+//CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+//ARISING IN ANY WAY OUT OF THE USE OF THIS  SOFTWARE, EVEN IF ADVISED OF 
+//THE POSSIBILITY OF SUCH DAMAGE.
+
+package de.uka.ilkd.pp;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/** Encodes characters as UTF-8 into a ByteBuffer, which is handed to
+ * {@link #write(ByteBuffer)} whenever it is full and on 
+ * {@link #flush()}.  The buffer may be direct, so that the bytes are
+ * encoded straight into memory a channel can write from.  The bytes 
+ * are the same as those produced by an OutputStreamWriter for UTF-8: 
+ * a high surrogate is kept until the next character arrives, even 
+ * across calls, and surrogates that are not part of a pair are 
+ * replaced by <code>'?'</code>.
+ */
+abstract class Utf8Encoder {
+
+	/** The replacement for malformed input */
+	private static final byte REPLACEMENT = (byte) '?';
+
+	/** Size of the array Strings are copied to before encoding */
+	private static final int CHUNK_SIZE = 1024;
+
+	/** The encoded bytes not yet written, from 0 up to the position */
+	private final ByteBuffer buf;
+
+	/** The array behind <code>buf</code>, if it is a heap buffer, or
+	 * <code>null</code>.  ASCII text is stored into it directly, 
+	 * which is cheaper than <code>put</code>. */
+	private final byte[] array;
+
+	/** The index in <code>array</code> of the start of 
+	 * <code>buf</code> */
+	private final int arrayOffset;
+
+	/** A high surrogate waiting for its low surrogate, or 0 */
+	private char highSurrogate = 0;
+
+	/** Strings are copied here, as array access is cheaper than 
+	 * <code>charAt</code> */
+	private char[] chunk;
+
+	/** Create an encoder filling <code>buf</code>, which must be empty
+	 * and have room for at least 4 bytes. */
+	Utf8Encoder(ByteBuffer buf) {
+		if (buf.capacity() < 4) {
+			throw new IllegalArgumentException(
+					"bufferSize must be at least 4");
+		}
+		this.buf = buf;
+		if (buf.hasArray()) {
+			array = buf.array();
+			arrayOffset = buf.arrayOffset();
+		} else {
+			array = null;
+			arrayOffset = 0;
+		}
+	}
+
+	/** Write the remaining bytes of <code>b</code> to the destination.
+	 * All of them must be consumed.  <code>b</code> is cleared for 
+	 * reuse afterwards. */
+	abstract void write(ByteBuffer b) throws IOException;
+
+	/** Encode the String <code>s</code> */
+	void encode(String s) throws IOException {
+		int n = s.length();
+		if (chunk == null) {
+			chunk = new char[CHUNK_SIZE];
+		}
+		for (int i = 0; i < n; i += CHUNK_SIZE) {
+			int end = Math.min(n, i + CHUNK_SIZE);
+			s.getChars(i, end, chunk, 0);
+			encode(chunk, 0, end - i);
+		}
+	}
+
+	/** Encode the characters <code>cs[offset..offset+n-1]</code> */
+	void encode(char[] cs, int offset, int n) throws IOException {
+		int i = offset;
+		int end = offset + n;
+		while (i < end) {
+			if (buf.remaining() < 4) {
+				writeBuffer();
+			}
+			if (highSurrogate == 0) {
+				// ASCII fast path, as far as the buffer allows
+				int asciiEnd = Math.min(end, i + buf.remaining());
+				char c;
+				if (array != null) {
+					int p = arrayOffset + buf.position();
+					int start = p;
+					while (i < asciiEnd && (c = cs[i]) < 0x80) {
+						array[p++] = (byte) c;
+						i++;
+					}
+					buf.position(buf.position() + p - start);
+				} else {
+					while (i < asciiEnd && (c = cs[i]) < 0x80) {
+						buf.put((byte) c);
+						i++;
+					}
+				}
+				if (i == end || buf.remaining() < 4) {
+					continue;
+				}
+			}
+			encodeChar(cs[i++]);
+		}
+	}
+
+	/** Encode <code>c</code>, which must be an ASCII character such as
+	 * a space or a newline, <code>n</code> times */
+	void encodeAscii(char c, int n) throws IOException {
+		if (n <= 0) {
+			return;
+		}
+		if (highSurrogate != 0) {
+			replaceHighSurrogate();
+		}
+		byte b = (byte) c;
+		while (n > 0) {
+			if (!buf.hasRemaining()) {
+				writeBuffer();
+			}
+			for (int k = Math.min(n, buf.remaining()); k > 0; k--) {
+				buf.put(b);
+				n--;
+			}
+		}
+	}
+
+	/** Write the bytes encoded so far.  A pending high surrogate is
+	 * kept. */
+	void flush() throws IOException {
+		writeBuffer();
+	}
+
+	/** Write the bytes encoded so far, and a replacement for a pending
+	 * high surrogate.  To be called at the end of the input. */
+	void finish() throws IOException {
+		if (highSurrogate != 0) {
+			replaceHighSurrogate();
+		}
+		writeBuffer();
+	}
+
+	/** Write a replacement for the pending high surrogate */
+	private void replaceHighSurrogate() throws IOException {
+		if (!buf.hasRemaining()) {
+			writeBuffer();
+		}
+		highSurrogate = 0;
+		buf.put(REPLACEMENT);
+	}
+
+	/** Hand the contents of the buffer to {@link #write(ByteBuffer)} */
+	private void writeBuffer() throws IOException {
+		if (buf.position() > 0) {
+			buf.flip();
+			try {
+				write(buf);
+			} finally {
+				buf.clear();
+			}
+		}
+	}
+
+	/** Encode a single char.  There must be room for 4 bytes. */
+	private void encodeChar(char c) {
+		if (highSurrogate != 0) {
+			if (Character.isLowSurrogate(c)) {
+				int cp = Character.toCodePoint(highSurrogate, c);
+				highSurrogate = 0;
+				buf.put((byte) (0xf0 | (cp >> 18)));
+				buf.put((byte) (0x80 | ((cp >> 12) & 0x3f)));
+				buf.put((byte) (0x80 | ((cp >> 6) & 0x3f)));
+				buf.put((byte) (0x80 | (cp & 0x3f)));
+				return;
+			}
+			// the unpaired high surrogate takes one of the 4 bytes,
+			// leaving enough for c
+			highSurrogate = 0;
+			buf.put(REPLACEMENT);
+		}
+		encodeSingle(c);
+	}
+
+	/** Encode a char that does not complete a surrogate pair */
+	private void encodeSingle(char c) {
+		if (c < 0x80) {
+			buf.put((byte) c);
+		} else if (c < 0x800) {
+			buf.put((byte) (0xc0 | (c >> 6)));
+			buf.put((byte) (0x80 | (c & 0x3f)));
+		} else if (Character.isHighSurrogate(c)) {
+			highSurrogate = c;
+		} else if (Character.isLowSurrogate(c)) {
+			buf.put(REPLACEMENT);
+		} else {
+			buf.put((byte) (0xe0 | (c >> 12)));
+			buf.put((byte) (0x80 | ((c >> 6) & 0x3f)));
+			buf.put((byte) (0x80 | (c & 0x3f)));
+		}
+	}
+}
@@ -35,30 +35,103 @@ import java.io.Writer;
  * The {@link #mark(Object o)} method does nothing in this implementation.
  * There is a method {@link #count()} which returns the number of characters
  * written by this so far.
+ * Lines, character ranges and spaces are written directly only
+ * by a WriterBackend itself, see {@link #acceptsLines()}.  In a 
+ * subclass, all output goes through {@link #print(String)} and
+ * {@link #newLine()}.
  */
 
-public class WriterBackend implements Backend<IOException> {
+public class WriterBackend implements LineBackend<IOException> {
 
     protected Writer out;
     protected int lineWidth;
     protected int count=0;
+    protected int tabWidth=0;
+
+    /** The exact number of characters written, up to the last call of
+     * {@link #addCount(int)} */
+    private long total=0;
+
+    /** The value <code>count</code> was set to by the last call of
+     * {@link #addCount(int)} */
+    private int countSeen=0;
 
     public WriterBackend(Writer w,int lineWidth) {
 	this.out = w;
 	this.lineWidth = lineWidth;
     }
 
+    /** Indent lines with tabs of width <code>tabWidth</code>, or with
+     * spaces only if it is 0.  A {@link Layouter} using this backend 
+     * picks this up when it is created or reset.
+     * @since 0.8.0
+     */
+    public void setTabWidth(int tabWidth) {
+	this.tabWidth = tabWidth;
+    }
+
     /** Append a String <code>s</code> to the output.  <code>s</code> 
      * contains no newlines. */
     public void print(String s) throws IOException {
 	out.write(s);
-	count+=measure(s);
+	addCount(s.length());
+    }
+
+    /** Append the characters <code>buf[offset..offset+length-1]</code>
+     * to the output. */
+    public void print(char[] buf, int offset, int length) throws IOException {
+	if (!acceptsLines()) {
+	    print(new String(buf, offset, length));
+	    return;
+	}
+	out.write(buf, offset, length);
+	addCount(length);
+    }
+
+    /** Append the characters <code>buf[offset..offset+length-1]</code>
+     * and a newline to the output. */
+    public void printLine(char[] buf, int offset, int length) 
+    	throws IOException {
+	if (!acceptsLines()) {
+	    print(new String(buf, offset, length));
+	    newLine();
+	    return;
+	}
+	out.write(buf, offset, length);
+	out.write('\n');
+	addCount(length+1);
+    }
+
+    /** Returns <code>true</code> only for a WriterBackend itself, not
+     * for subclasses, so that subclasses which intercept the output in 
+     * {@link #print(String)} and {@link #newLine()} see all of it.  A
+     * subclass that also overrides {@link #printLine(char[], int, int)},
+     * {@link #print(char[], int, int)} and {@link #writeSpaces(int)},
+     * or does not intercept the output, may return <code>true</code>.
+     * @since 0.8.0
+     */
+    public boolean acceptsLines() {
+	return getClass() == WriterBackend.class;
     }
 
     /** Start a new line. */
     public void newLine() throws IOException {
 	out.write('\n');
-	count++;
+	addCount(1);
+    }
+
+    /** Append <code>n</code> spaces to the output. */
+    public void writeSpaces(int n) throws IOException {
+	if (!acceptsLines()) {
+	    Spaces.print(this, n);
+	    return;
+	}
+	addCount(n);
+	while (n > Spaces.NR_SPACES) {
+	    out.write(Spaces.CHARS, 0, Spaces.NR_SPACES);
+	    n -= Spaces.NR_SPACES;
+	}
+	out.write(Spaces.CHARS, 0, n);
     }
 
     /** Closes this backend */
@@ -76,19 +149,56 @@ public class WriterBackend implements Backend<IOException> {
 	return;
     }
 
-    /** Returns the number of characters written through this backend.*/
+    /** Returns the number of characters written through this backend,
+     * or <code>Integer.MAX_VALUE</code> if it is larger.  See
+     * {@link #longCount()}. */
     public int count() {
 	return count;
     }
 
+    /** Returns the number of characters written through this backend.
+     * Long-lived backends can write more than 2<sup>31</sup> characters.
+     * @since 0.8.0
+     */
+    public long longCount() {
+	return total + (count - countSeen);
+    }
+
+    /** Add <code>n</code> to the number of characters written.  
+     * <code>count</code> stops at <code>Integer.MAX_VALUE</code>.
+     * Changes made to it by subclasses since the last call are carried
+     * over to the exact total. */
+    void addCount(int n) {
+	total += count - countSeen;
+	total += n;
+	count = (int) Math.min(total, Integer.MAX_VALUE);
+	countSeen = count;
+    }
+
     /** Returns the available space per line */
     public int lineWidth() {
 	return lineWidth;
     }
 
+    /** Returns the width of a tab for indentation, or 0 */
+    public int tabWidth() {
+	return tabWidth;
+    }
+
     /** Returns the space required to print the String <code>s</code> */
     public int measure(String s) {
 	return s.length();
     }
 
+    /** Returns the space required to print the given characters.  In
+     * a subclass, this is what {@link #measure(String)} returns for 
+     * them, so that the two agree if that is overridden. */
+    public int measure(char[] buf, int offset, int length) {
+	if (getClass() == WriterBackend.class 
+	    || getClass() == BufferedWriterBackend.class) {
+	    return length;
+	}
+	return measure(new String(buf, offset, length));
+    }
+
 }
@@ -0,0 +1,379 @@
+//This file is part of the Java™ Pretty Printer Library (JPPlib)
+//Copyright (c) 2009, Martin Giese
+//All rights reserved.
+//
+//Redistribution and use in source and binary forms, with or without 
+//modification, are permitted provided that the following conditions are met:
+// 
+// * Redistributions of source code must retain the above copyright 
+//   notice, this list of conditions and the following disclaimer.
+// * Redistributions in binary form must reproduce the above copyright 
+//   notice, this list of conditions and the following disclaimer in the 
+//   documentation and/or other materials provided with the distribution.
+// * Neither the name of the author nor the names of his contributors 
+//   may be used to endorse or promote products derived from this 
+//   software without specific prior written permission.
+// 
+//THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+//AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE 
+//IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+//ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE 
+//LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+//CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF 
+//SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+//INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+//CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+//ARISING IN ANY WAY OUT OF THE USE OF THIS  SOFTWARE, EVEN IF ADVISED OF 
+//THE POSSIBILITY OF SUCH DAMAGE.
+
+package de.uka.ilkd.pp.tests;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+
+import de.uka.ilkd.pp.AsyncBackend;
+import de.uka.ilkd.pp.Backend;
+import de.uka.ilkd.pp.BufferedWriterBackend;
+import de.uka.ilkd.pp.ChannelBackend;
+import de.uka.ilkd.pp.CharArrayBackend;
+import de.uka.ilkd.pp.Layouter;
+import de.uka.ilkd.pp.MappedFileBackend;
+import de.uka.ilkd.pp.NoExceptions;
+import de.uka.ilkd.pp.OutputStreamBackend;
+import de.uka.ilkd.pp.StringBackend;
+import de.uka.ilkd.pp.WriterBackend;
+import junit.framework.TestCase;
+
+/** Unit-Test the {@link Backend} implementations, by comparing their
+ * output to that of a {@link StringBackend}. */
+
+public class TestBackends extends TestCase {
+
+	/** A Writer counting calls to write */
+	class CountingWriter extends StringWriter {
+		int writes = 0;
+
+		public void write(int c) {
+			writes++;
+			super.write(c);
+		}
+
+		public void write(char[] cbuf, int off, int len) {
+			writes++;
+			super.write(cbuf, off, len);
+		}
+
+		public void write(String str) {
+			writes++;
+			super.write(str);
+		}
+
+		public void write(String str, int off, int len) {
+			writes++;
+			super.write(str, off, len);
+		}
+	}
+
+	public TestBackends(String name) {
+		super(name);
+	}
+
+	/** Lay out some text with words of various lengths and some 
+	 * deep indentation. */
+	static <Exc extends Exception> void layOut(Backend<Exc> back) 
+		throws Exc 
+	{
+		Layouter<Exc> l = new Layouter<Exc>(back,2);
+		l.beginC(0);
+		for (int i = 0; i < 200; i++) {
+			l.beginI(i % 7).print("word" + i).brk(1,0)
+			.print(i % 13 == 0 ? "a rather long fragment of text" : "x")
+			.end().brk(1,0);
+		}
+		l.beginC(200).print("deep").brk(1,0).print("deeper").end();
+		l.pre("pre\nformatted").end().close();
+	}
+
+	/** The output of {@link #layOut(Backend)} for a width of 
+	 * <code>lineWidth</code> */
+	static String expected(int lineWidth) {
+		StringBackend back = new StringBackend(lineWidth);
+		layOut(back);
+		return back.getString();
+	}
+
+	public void testBufferedWriterBackend() throws IOException {
+		for (int bufferSize : new int[] { 1, 7, 64, 8192 }) {
+			CountingWriter w = new CountingWriter();
+			BufferedWriterBackend back = 
+				new BufferedWriterBackend(w,40,bufferSize);
+			layOut(back);
+			String s = w.toString();
+			assertEquals("same output",expected(40),s);
+			assertEquals("count",s.length(),back.count());
+			if (bufferSize >= 64) {
+				assertTrue("large chunks",
+						w.writes <= 2 * s.length() / bufferSize + 1);
+			}
+		}
+	}
+
+	public void testWriterBackendCount() throws IOException {
+		WriterBackend back = new WriterBackend(new StringWriter(),40) {
+			{
+				count = Integer.MAX_VALUE - 1;
+			}
+		};
+		back.print("ab");
+		back.newLine();
+		assertEquals("saturated",Integer.MAX_VALUE,back.count());
+		assertEquals("long count",Integer.MAX_VALUE + 2L,back.longCount());
+	}
+
+	public void testBufferedWriterBackendFlush() throws IOException {
+		CountingWriter w = new CountingWriter();
+		BufferedWriterBackend back = new BufferedWriterBackend(w,40);
+		Layouter<IOException> l = new Layouter<IOException>(back,2);
+		l.print("A").print("B");
+		assertEquals("buffered","",w.toString());
+		l.flush();
+		assertEquals("flushed","AB",w.toString());
+		assertEquals("one write",1,w.writes);
+	}
+
+	public void testOutputStreamBackend() throws IOException {
+		for (int bufferSize : new int[] { 4, 5, 64, 8192 }) {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			OutputStreamBackend back = 
+				new OutputStreamBackend(bytes,40,bufferSize);
+			layOut(back);
+			assertEquals("same output",expected(40),
+					new String(bytes.toByteArray(),"UTF-8"));
+		}
+	}
+
+	public void testChannelBackend() throws IOException {
+		for (int bufferSize : new int[] { 4, 5, 64, 65536 }) {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			ChannelBackend back = new ChannelBackend(
+					Channels.newChannel(bytes),40,bufferSize);
+			layOut(back);
+			assertEquals("same output",expected(40),
+					new String(bytes.toByteArray(),"UTF-8"));
+		}
+	}
+
+	public void testMappedFileBackend() throws IOException {
+		File file = File.createTempFile("jpplib", ".txt");
+		try {
+			for (int windowSize : new int[] { 1, 7, 64, 1 << 20 }) {
+				FileChannel channel = FileChannel.open(file.toPath(),
+						StandardOpenOption.READ, StandardOpenOption.WRITE);
+				MappedFileBackend back = 
+					new MappedFileBackend(channel,40,windowSize);
+				layOut(back);
+				byte[] bytes = Files.readAllBytes(file.toPath());
+				assertEquals("same output",expected(40),
+						new String(bytes,"UTF-8"));
+			}
+			MappedFileBackend back = 
+				new MappedFileBackend(file.toPath(),40);
+			new Layouter<IOException>(back,2).print("\u20ac").close();
+			assertEquals("truncated",3,file.length());
+		} finally {
+			file.delete();
+		}
+	}
+
+	/** A StringBackend which waits until <code>go</code> is counted 
+	 * down before starting a new line */
+	class WaitingBackend extends StringBackend {
+		CountDownLatch go = new CountDownLatch(1);
+
+		public WaitingBackend(int lineWidth) {
+			super(lineWidth);
+		}
+
+		public void newLine() {
+			try {
+				go.await();
+			} catch (InterruptedException e) {
+				throw new RuntimeException(e);
+			}
+			super.newLine();
+		}
+	}
+
+	public void testAsyncBackend() {
+		for (int capacity : new int[] { 1, 7, 4096 }) {
+			WaitingBackend back = new WaitingBackend(40);
+			AsyncBackend<NoExceptions> async = 
+				new AsyncBackend<NoExceptions>(back,capacity,
+						AsyncBackend.Overflow.BLOCK,
+						Executors.defaultThreadFactory());
+			back.go.countDown();
+			layOut(async);
+			assertEquals("same output",expected(40),back.getString());
+			assertEquals("nothing dropped",0,async.dropped());
+		}
+	}
+
+	public void testAsyncBackendDrop() {
+		WaitingBackend back = new WaitingBackend(40);
+		AsyncBackend<NoExceptions> async = 
+			new AsyncBackend<NoExceptions>(back,8,
+					AsyncBackend.Overflow.DROP,
+					Executors.defaultThreadFactory());
+		async.newLine();
+		for (int i = 0; i < 10; i++) {
+			async.print("AB");
+		}
+		assertTrue("dropped",async.dropped() >= 14);
+		back.go.countDown();
+		async.close();
+		assertEquals("rest written",21,
+				back.getString().length() + async.dropped());
+	}
+
+	public void testAsyncBackendCloseTwice() {
+		final int[] closes = new int[1];
+		StringBackend back = new StringBackend(40) {
+			public void close() {
+				closes[0]++;
+			}
+		};
+		AsyncBackend<NoExceptions> async = 
+			new AsyncBackend<NoExceptions>(back);
+		async.print("A");
+		async.close();
+		async.close();
+		assertEquals("written","A",back.getString());
+		assertEquals("closed once",1,closes[0]);
+	}
+
+	public void testAsyncBackendFailure() throws IOException {
+		Writer failing = new Writer() {
+			public void write(char[] cbuf, int off, int len) 
+				throws IOException {
+				throw new IOException("disk full");
+			}
+			public void flush() { }
+			public void close() { }
+		};
+		AsyncBackend<IOException> async = new AsyncBackend<IOException>(
+				new WriterBackend(failing,40));
+		async.print("A");
+		try {
+			async.close();
+			fail("deferred exception not thrown");
+		} catch (IOException e) {
+			assertEquals("deferred exception","disk full",e.getMessage());
+		}
+	}
+
+	public void testCharArrayBackend() throws IOException {
+		CharArrayBackend back = new CharArrayBackend(40,1);
+		layOut(back);
+		String expected = expected(40);
+		assertEquals("string",expected,back.getString());
+		assertEquals("count",expected.length(),back.count());
+		assertEquals("chars",expected,
+				new String(back.getChars(),0,back.count()));
+		CharSequence cs = back.getCharSequence();
+		assertEquals("char sequence",expected,cs.toString());
+		assertEquals("sub sequence",expected.substring(3,17),
+				cs.subSequence(3,17).toString());
+		assertEquals("char at",expected.charAt(5),cs.charAt(5));
+		StringWriter w = new StringWriter();
+		back.writeTo(w);
+		assertEquals("writer",expected,w.toString());
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		back.writeTo(bytes);
+		assertEquals("stream",expected,
+				new String(bytes.toByteArray(),"UTF-8"));
+
+		char[] array = back.getChars();
+		back.reset();
+		new Layouter<NoExceptions>(back,2).print("\u20ac").close();
+		assertEquals("after reset","\u20ac",back.getString());
+		assertSame("array reused",array,back.getChars());
+		bytes.reset();
+		back.writeTo(bytes);
+		assertEquals("encoded",3,bytes.size());
+	}
+
+	/** Characters that are hard to encode */
+	private static final char[] NON_ASCII = { 
+		'\u00e4', '\u07ff', '\u0800', '\u20ac', '\uffff',
+		'\ud83d', '\ude00', '\udbff', '\udfff' };
+
+	public void testOutputStreamBackendEncoding() throws IOException {
+		Random r = new Random(42);
+		for (int bufferSize : new int[] { 4, 5, 7, 64 }) {
+			for (int run = 0; run < 100; run++) {
+				ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+				ByteArrayOutputStream expected = new ByteArrayOutputStream();
+				// odd runs encode into the direct buffer of a 
+				// ChannelBackend
+				Backend<IOException> back = run % 2 == 0
+					? new OutputStreamBackend(bytes,40,bufferSize)
+					: new ChannelBackend(
+							Channels.newChannel(bytes),40,bufferSize);
+				Writer w = new OutputStreamWriter(expected,"UTF-8");
+				for (int i = 0; i < 20; i++) {
+					StringBuilder sb = new StringBuilder();
+					int n = r.nextInt(12);
+					for (int j = 0; j < n; j++) {
+						sb.append(r.nextBoolean() 
+								? (char) ('a' + r.nextInt(26)) 
+								: NON_ASCII[r.nextInt(NON_ASCII.length)]);
+					}
+					String s = sb.toString();
+					switch (r.nextInt(4)) {
+					case 0:
+						back.newLine();
+						w.write('\n');
+						break;
+					case 1:
+						back.writeSpaces(n);
+						for (int j = 0; j < n; j++) {
+							w.write(' ');
+						}
+						break;
+					case 2:
+						back.print(s.toCharArray(),0,n);
+						w.write(s);
+						break;
+					default:
+						back.print(s);
+						w.write(s);
+					}
+				}
+				back.close();
+				w.close();
+				assertEquals("same bytes",
+						toHex(expected.toByteArray()),
+						toHex(bytes.toByteArray()));
+			}
+		}
+	}
+
+	private static String toHex(byte[] b) {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < b.length; i++) {
+			sb.append(Integer.toHexString(b[i] & 0xff)).append(' ');
+		}
+		return sb.toString();
+	}
+}
@@ -110,6 +110,31 @@ public class TestDataLayouter extends TestCase
     	assertEquals("Map narrow","{a=\n   1,\n b=\n   2,\n c=\n   3}",narrowBack.getString());
     }
 
+    public void testMeasuredBrackets() {
+	/* brackets and commas take no space */
+	StringBackend back = new StringBackend(10) {
+		public int measure(String s) {
+		    return s.replaceAll("[\\[\\],{}=]","").length();
+		}
+	    };
+	DataLayouter<NoExceptions> l = new DataLayouter<NoExceptions>(back,2);
+	l.print(Arrays.asList("","","","","","","","")).close();
+	assertEquals("List measured","[, , , , , , , ]",back.getString());
+
+	back = new StringBackend(10) {
+		public int measure(String s) {
+		    return s.replaceAll("[\\[\\],{}=]","").length();
+		}
+	    };
+	l = new DataLayouter<NoExceptions>(back,2);
+	SortedMap<String,String> m = new TreeMap<String,String>();
+	for (int i = 0; i < 5; i++) {
+	    m.put(String.valueOf(i),"");
+	}
+	l.print(m).close();
+	assertEquals("Map measured","{0=, 1=, 2=, 3=, 4=}",back.getString());
+    }
+
     public void testTenMap() {
     	SortedMap<String,Integer> m = new TreeMap<String,Integer>();
     	m.put("a",1);
@@ -28,10 +28,21 @@
 
 package de.uka.ilkd.pp.tests;
 
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
 import de.uka.ilkd.pp.Backend;
 import de.uka.ilkd.pp.Layouter;
 import de.uka.ilkd.pp.NoExceptions;
 import de.uka.ilkd.pp.StringBackend;
+import de.uka.ilkd.pp.UnbalancedBlocksException;
+import de.uka.ilkd.pp.WriterBackend;
+
 import junit.framework.TestCase;
 
 /** Unit-Test the {@link Layouter} class. */
@@ -90,6 +101,77 @@ public class TestLayouter extends TestCase {
 		}
 	}
 
+	/** A backend counting calls to {@link #measure(String)} */
+	class MeasuringBackend extends StringBackend {
+		int measured = 0;
+
+		public MeasuringBackend(int lineWidth) {
+			super(lineWidth);
+		}
+
+		public int measure(String s) {
+			measured++;
+			return super.measure(s);
+		}
+	}
+
+	class LineCountingBackend extends StringBackend {
+		int lines = 0;
+		int pieces = 0;
+
+		public LineCountingBackend(int lineWidth) {
+			super(lineWidth);
+		}
+
+		public void print(String s) {
+			pieces++;
+			super.print(s);
+		}
+
+		public void newLine() {
+			pieces++;
+			super.newLine();
+		}
+
+		public void printLine(char[] buf, int offset, int length) {
+			lines++;
+			super.printLine(buf, offset, length);
+		}
+
+		public boolean acceptsLines() {
+			return true;
+		}
+	}
+
+	/** A backend escaping its output, as subclasses written before 
+	 * {@link de.uka.ilkd.pp.LineBackend} did */
+	class EscapingBackend extends StringBackend {
+		public EscapingBackend(int lineWidth) {
+			super(lineWidth);
+		}
+
+		public void print(String s) {
+			super.print(s.replace(' ', '_'));
+		}
+
+		public void newLine() {
+			super.print("$");
+			super.newLine();
+		}
+	}
+
+	/** A backend implementing only the required methods */
+	class PlainBackend implements Backend<NoExceptions> {
+		StringBuilder sb = new StringBuilder();
+		public void print(String s) { sb.append(s); }
+		public void newLine() { sb.append('\n'); }
+		public void close() { }
+		public void flush() { }
+		public void mark(Object o) { }
+		public int lineWidth() { return 1; }
+		public int measure(String s) { return s.length(); }
+	}
+
 	public void testNarrowConsistent() {
 		narrow.beginC().print("A").beginC()
 		.print("B").brk(1,2)
@@ -187,6 +269,691 @@ public class TestLayouter extends TestCase {
 				sixBack.getString());
 	}
 
+	public void testManyBufferedTokens() {
+		StringBuilder expected = new StringBuilder();
+		wide.beginC();
+		for (int i = 0; i < 1000; i++) {
+			wide.beginI().print("A").brk(1,0).print("B").end().brk(1,0);
+			expected.append("A B ");
+		}
+		wide.print("C").end().close();
+		expected.append("C");
+		assertEquals("many buffered tokens",expected.toString(),
+				wideBack.getString());
+	}
+
+	public void testDeepNesting() {
+		StringBuilder expected = new StringBuilder();
+		for (int i = 0; i < 100000; i++) {
+			narrow.beginCInd(0).print("(").brk(0,0);
+			expected.append("(\n");
+		}
+		for (int i = 0; i < 100000; i++) {
+			narrow.print(")").end();
+			expected.append(")");
+		}
+		narrow.close();
+		assertEquals("deep nesting",expected.toString(),
+				narrowBack.getString());
+	}
+
+	public void testUnbalancedEnd() {
+		narrow.beginC().print("A").end();
+		try {
+			narrow.end();
+			fail("end() without begin() accepted");
+		} catch (UnbalancedBlocksException e) {
+			// expected
+		}
+	}
+
+	public void testMeasureOnce() {
+		MeasuringBackend back = new MeasuringBackend(6);
+		Layouter<NoExceptions> l = new Layouter<NoExceptions>(back,2);
+		l.beginC().print("A").beginI()
+		.print("B").brk(1,2)
+		.print("C").brk(2,3)
+		.print("D").end().print("E").end()
+		.print("F").close();
+		assertEquals("some breaks inconsistent","AB C\n      DEF",
+				back.getString());
+		assertEquals("one measurement per fragment",6,back.measured);
+	}
+
+	public void testPrintPrimitives() {
+		char[] chars = "xABCx".toCharArray();
+		wide.print(1).beginC().print(-23L).brk(1,0)
+		.print(0.5).brk(1,0).print('c').brk(1,0)
+		.print(true).brk(1,0).print(new StringBuilder("sb"))
+		.brk(1,0).print(chars,1,3).end().print(chars,0,1).close();
+		assertEquals("primitives","1-23 0.5 c true sb ABCx",
+				wideBack.getString());
+	}
+
+	public void testPrintCharsBuffered() {
+		StringBackend stringBack = new StringBackend(6);
+		Layouter<NoExceptions> strings = 
+			new Layouter<NoExceptions>(stringBack,2);
+		String digits = "0123456789";
+		char[] chars = digits.toCharArray();
+		six.beginC(0);
+		strings.beginC(0);
+		for (int i = 0; i < 1000; i++) {
+			six.beginI(0).print(chars,i%10,1).print(i).brk(1,0)
+			.print(chars,0,i%3).end().brk(1,0);
+			strings.beginI(0).print(digits.substring(i%10,i%10+1))
+			.print(String.valueOf(i)).brk(1,0)
+			.print(digits.substring(0,i%3)).end().brk(1,0);
+		}
+		six.end().close();
+		strings.end().close();
+		assertEquals("buffered chars",stringBack.getString(),
+				sixBack.getString());
+	}
+
+	public void testReset() {
+		Layouter<NoExceptions> l = new Layouter<NoExceptions>(sixBack,2,16);
+		l.setRetainedCapacity(16);
+		l.beginC(0);
+		for (int i = 0; i < 1000; i++) {
+			l.print("A").brk(1,0);
+		}
+		// abandon the unfinished document
+		sixBack.reset();
+		l.reset().beginI().print("AB").brk(1,2)
+		.print("C").brk(2,3).print("D").end().close();
+		assertEquals("after reset","AB C\n     D",sixBack.getString());
+
+		sixBack.reset(10000);
+		l.reset().beginI().print("AB").brk(1,2)
+		.print("C").brk(2,3).print("D").end().close();
+		assertEquals("after reset with new width","AB C  D",
+				sixBack.getString());
+
+		l.reset(narrowBack).beginC(0).print("A").brk(1,0).print("B")
+		.end().close();
+		assertEquals("after reset to new backend","A\nB",
+				narrowBack.getString());
+	}
+
+	public void testFlatMode() {
+		StringBuilder sb = new StringBuilder();
+		Layouter<NoExceptions> flat = Layouter.getStringLayouter(sb,1,2,
+				Layouter.LayoutMode.FLAT);
+		flat.beginC().print("A").beginI()
+		.print("B").brk(1,2)
+		.print("C").ind(3,4).print("D").brk(2,3)
+		.print("E").end().print("F").end().nl().print("G").close();
+		assertEquals("flat","AB C   D  EF\nG",sb.toString());
+	}
+
+	public void testAllBrokenMode() {
+		StringBuilder sb = new StringBuilder();
+		Layouter<NoExceptions> broken = Layouter.getStringLayouter(sb,10000,2,
+				Layouter.LayoutMode.ALL_BROKEN);
+		broken.beginC().print("A").beginI()
+		.print("B").brk(1,2)
+		.print("C").brk(2,3)
+		.print("D").end().print("E").end()
+		.print("F").close();
+		assertEquals("all broken","AB\n     C\n      DEF",sb.toString());
+	}
+
+	public void testDirectModesUnbalanced() {
+		for (Layouter.LayoutMode mode : new Layouter.LayoutMode[] {
+				Layouter.LayoutMode.FLAT, Layouter.LayoutMode.ALL_BROKEN }) {
+			Layouter<NoExceptions> l = Layouter.getStringLayouter(
+					new StringBuilder(),80,2,mode);
+			l.beginC().print("A").end();
+			try {
+				l.end();
+				fail("end() without begin() accepted in " + mode);
+			} catch (UnbalancedBlocksException e) {
+				// expected
+			}
+			l = Layouter.getStringLayouter(new StringBuilder(),80,2,mode);
+			l.beginC().print("A");
+			try {
+				l.close();
+				fail("unclosed block accepted in " + mode);
+			} catch (UnbalancedBlocksException e) {
+				// expected
+			}
+		}
+	}
+
+	public void testBrokenBlock() {
+		wide.beginB(0).print("A").brk(1,0).print("B");
+		assertEquals("streamed before end","A\nB",wideBack.getString());
+		wide.beginI(2).print("C").brk(1,0).print("D").end()
+		.brk(1,0).print("E").end().close();
+		assertEquals("broken block","A\nBC D\nE",wideBack.getString());
+	}
+
+	public void testBrokenBlockBreaksEnclosing() {
+		wide.beginC(0).print("A").brk(1,0).print("B").beginI(0)
+		.print("C").brk(1,0).beginB(2).print("D").brk(1,0).print("E").end()
+		.end().brk(1,0).print("F").end().close();
+		assertEquals("enclosing blocks broken","A\nBC\n D\n   E\nF",
+				wideBack.getString());
+	}
+
+	public void testWidthHint() {
+		StringBackend plainBack = new StringBackend(6);
+		Layouter<NoExceptions> plain = new Layouter<NoExceptions>(plainBack,2);
+		six.beginC(0).print("A").brk(1,0).print("B")
+		.begin(Layouter.BreakConsistency.INCONSISTENT,
+			   Layouter.IndentationBase.FROM_POS,0,10);
+		assertEquals("decided up front","A\nB",sixBack.getString());
+		plain.beginC(0).print("A").brk(1,0).print("B").beginI(0);
+		for (int i = 0; i < 5; i++) {
+			six.print("CD").brk(1,0);
+			plain.print("CD").brk(1,0);
+		}
+		six.end().end().close();
+		plain.end().end().close();
+		assertEquals("same layout",plainBack.getString(),sixBack.getString());
+	}
+
+	public void testLineBackend() {
+		LineCountingBackend back = new LineCountingBackend(6);
+		Layouter<NoExceptions> l = new Layouter<NoExceptions>(back,2);
+		l.beginC().print("A").beginI()
+		.print("B").brk(1,2)
+		.print("C").brk(2,3)
+		.print("D").end().print("E").end().close();
+		assertEquals("some breaks inconsistent","AB C\n      DE",
+				back.getString());
+		assertEquals("whole lines",1,back.lines);
+		// only the unbuffered "E" is sent on its own
+		assertEquals("pieces",1,back.pieces);
+	}
+
+	public void testSubclassSeesAllOutput() throws IOException {
+		EscapingBackend back = new EscapingBackend(6);
+		back.setTabWidth(4);
+		StringWriter sw = new StringWriter();
+		WriterBackend writerBack = new WriterBackend(sw, 6) {
+			public void print(String s) throws IOException {
+				super.print(s.replace(' ', '_'));
+			}
+
+			public void newLine() throws IOException {
+				super.print("$");
+				super.newLine();
+			}
+		};
+		writerBack.setTabWidth(4);
+		char[] cs = "F G".toCharArray();
+		Layouter<NoExceptions> l = new Layouter<NoExceptions>(back,2);
+		Layouter<IOException> w = new Layouter<IOException>(writerBack,2);
+		l.beginC().print("A B").beginI(5)
+		.print("C").brk(1,2)
+		.print("D").brk(2,3)
+		.print(cs, 0, 3).end().print("E").end().close();
+		w.beginC().print("A B").beginI(5)
+		.print("C").brk(1,2)
+		.print("D").brk(2,3)
+		.print(cs, 0, 3).end().print("E").end().close();
+		assertEquals("escaped","A_BC_D$\n\t\t___F_GE",back.getString());
+		assertEquals("escaped writer","A_BC_D$\n\t\t___F_GE",
+				sw.toString());
+	}
+
+	/** A backend measuring each character as two columns */
+	class WideBackend extends StringBackend {
+		public WideBackend(int lineWidth) {
+			super(lineWidth);
+		}
+
+		public int measure(String s) {
+			return 2 * s.length();
+		}
+	}
+
+	public void testSubclassMeasure() {
+		WideBackend stringBack = new WideBackend(10);
+		WideBackend charsBack = new WideBackend(10);
+		WideBackend seqBack = new WideBackend(10);
+		WideBackend wordsBack = new WideBackend(10);
+		new Layouter<NoExceptions>(stringBack,2)
+		.beginI(0).print("aaa").brk(1,0).print("bbb").end().close();
+		new Layouter<NoExceptions>(charsBack,2)
+		.beginI(0).print("aaa".toCharArray(),0,3).brk(1,0)
+		.print("bbb".toCharArray(),0,3).end().close();
+		new Layouter<NoExceptions>(seqBack,2)
+		.beginI(0).print(new StringBuilder("aaa")).brk(1,0)
+		.print(new StringBuilder("bbb")).end().close();
+		new Layouter<NoExceptions>(wordsBack,2)
+		.beginI(0).printWords("aaa bbb").end().close();
+		assertEquals("print(String)","aaa\nbbb",stringBack.getString());
+		assertEquals("print(char[])","aaa\nbbb",charsBack.getString());
+		assertEquals("print(CharSequence)","aaa\nbbb",seqBack.getString());
+		assertEquals("printWords","aaa\nbbb",wordsBack.getString());
+	}
+
+	public void testDeepIndentation() {
+		PlainBackend plainBack = new PlainBackend();
+		Layouter<NoExceptions> plain = new Layouter<NoExceptions>(plainBack,2);
+		narrow.print("A").beginC(300).print("B").brk(1,0).print("C")
+		.ind(0,130).print("D").end().close();
+		plain.print("A").beginC(300).print("B").brk(1,0).print("C")
+		.ind(0,130).print("D").end().close();
+		StringBuilder expected = new StringBuilder("AB\n");
+		for (int i = 0; i < 301; i++) {
+			expected.append(' ');
+		}
+		expected.append("C");
+		for (int i = 0; i < 129; i++) {
+			expected.append(' ');
+		}
+		expected.append("D");
+		assertEquals("indented",expected.toString(),narrowBack.getString());
+		assertEquals("default methods",expected.toString(),
+				plainBack.sb.toString());
+	}
+
+	public void testNoTrailingWhitespace() {
+		LineCountingBackend back = new LineCountingBackend(6);
+		Layouter<NoExceptions> l = new Layouter<NoExceptions>(back,2);
+		l.beginC(4).print("A").brk(1,0).brk(1,0).ind(3,0)
+		.print("B").brk(1,0).print("C").ind(2,0).end().close();
+		assertEquals("no trailing spaces","A\n\n    B\n    C",
+				back.getString());
+		narrow.beginC(0).print("A").brk(1,0).pre("B \nC").end().close();
+		assertEquals("spaces in text are kept","A\nB \nC",
+				narrowBack.getString());
+	}
+
+	public void testTabIndentation() {
+		for (int tabWidth = 1; tabWidth <= 8; tabWidth++) {
+			StringBackend spaceBack = new StringBackend(20);
+			StringBackend tabBack = new StringBackend(20);
+			tabBack.setTabWidth(tabWidth);
+			Layouter<NoExceptions> spaces =
+				new Layouter<NoExceptions>(spaceBack,3);
+			Layouter<NoExceptions> tabs =
+				new Layouter<NoExceptions>(tabBack,3);
+			List<Layouter<NoExceptions>> both = Arrays.asList(spaces, tabs);
+			for (Layouter<NoExceptions> l : both) {
+				l.beginC(0);
+				for (int i = 0; i < 8; i++) {
+					l.print("[").beginI().print("AB").brk(1,i%3)
+					.ind(1,1).print("CD").brk(1,0).print("E");
+				}
+				for (int i = 0; i < 8; i++) {
+					l.end().print("]").brk(1,0).pre("F\nG");
+				}
+				l.end().close();
+			}
+			String expanded = expandTabs(tabBack.getString(),tabWidth);
+			assertEquals("same layout",spaceBack.getString(),expanded);
+			assertTrue("fewer characters",
+					tabWidth == 1 && tabBack.count() == spaceBack.count()
+					|| tabBack.count() < spaceBack.count());
+		}
+	}
+
+	/** Replace tabs by spaces up to the next multiple of
+	 * <code>tabWidth</code> */
+	private static String expandTabs(String s, int tabWidth) {
+		StringBuilder sb = new StringBuilder();
+		int col = 0;
+		for (int i = 0; i < s.length(); i++) {
+			char c = s.charAt(i);
+			if (c == '\t') {
+				do {
+					sb.append(' ');
+					col++;
+				} while (col % tabWidth != 0);
+			} else {
+				sb.append(c);
+				col = c == '\n' ? 0 : col + 1;
+			}
+		}
+		return sb.toString();
+	}
+
+	/** A backend which only counts characters and checks line lengths */
+	class CountingBackend implements Backend<NoExceptions> {
+		long chars = 0;
+		long lines = 0;
+		int lineLength = 0;
+		int expectedLineLength;
+
+		CountingBackend(int expectedLineLength) {
+			this.expectedLineLength = expectedLineLength;
+		}
+
+		public void print(String s) {
+			chars += s.length();
+			lineLength += s.length();
+		}
+
+		public void writeSpaces(int n) {
+			chars += n;
+			lineLength += n;
+		}
+
+		public void newLine() {
+			assertEquals("line " + lines,expectedLineLength,lineLength);
+			chars++;
+			lines++;
+			lineLength = 0;
+		}
+
+		public void close() { }
+		public void flush() { }
+		public void mark(Object o) { }
+		public int lineWidth() { return 3 * expectedLineLength / 2; }
+		public int measure(String s) { return s.length(); }
+	}
+
+	public void testUnboundedStream() {
+		char[] chars = new char[1 << 20];
+		java.util.Arrays.fill(chars,'x');
+		String big = new String(chars);
+		CountingBackend back = new CountingBackend(2 * big.length() + 1);
+		Layouter<NoExceptions> l = new Layouter<NoExceptions>(back,2);
+		l.beginC(0);
+		long n = (1L << 32) / (2 * big.length()) + 10;
+		for (long i = 0; i < n; i++) {
+			l.beginI(0).print(big).brk(1,0).print(big).end().brk(1,0);
+		}
+		l.print("").end().close();
+		assertEquals("lines",n,back.lines);
+		assertEquals("characters",n * (2 * big.length() + 2),back.chars);
+		assertTrue("more than 4G characters",back.chars > (1L << 32));
+	}
+
+	class MarkCountingBackend extends StringBackend {
+		long marks = 0;
+
+		MarkCountingBackend(int lineWidth) {
+			super(lineWidth);
+		}
+
+		public void mark(Object o) {
+			marks++;
+		}
+	}
+
+	public void testBoundedLookahead() {
+		MarkCountingBackend back = new MarkCountingBackend(10000);
+		Layouter<NoExceptions> l = new Layouter<NoExceptions>(back,2);
+		l.setBufferLimits(1000,4096);
+		int n = 3000000;
+		l.beginC(0).print("A").brk(1,0);
+		for (int i = 0; i < n; i++) {
+			l.mark(null);
+		}
+		l.print("B").end().close();
+		assertEquals("forced break","A\nB",back.getString());
+		assertEquals("marks",n,back.marks);
+		assertTrue("tokens buffered",
+				l.getPeakBufferedTokens() <= 1001);
+
+		l.reset(back = new MarkCountingBackend(10000));
+		l.setBufferLimits(1000,4096);
+		char[] buf = "abcdefgh".toCharArray();
+		l.beginC(0).print("A").brk(1,0);
+		for (int i = 0; i < 1000; i++) {
+			l.print(buf,0,0);
+			l.print(buf,0,8).brk(0,0);
+		}
+		l.end().close();
+		assertTrue("characters buffered",
+				l.getPeakBufferedChars() <= 4096 + 8);
+	}
+
+	public void testUnlimitedByDefault() {
+		StringBackend back = new StringBackend(100000000);
+		Layouter<NoExceptions> l = new Layouter<NoExceptions>(back,2);
+		l.beginC(0);
+		for (int i = 0; i < 100000; i++) {
+			l.print("a").brk(1,0);
+		}
+		l.end().close();
+		assertEquals("no newlines",-1,back.getString().indexOf('\n'));
+		assertTrue("all buffered",l.getPeakBufferedTokens() > 200000);
+	}
+
+	public void testFusion() {
+		wide.beginC(2).print("</").print("x").print(">").beginC(0).end()
+			.ind(1,0).ind(0,0).brk(1,0).print("a").end().close();
+		assertEquals("wide","</x>  a",wideBack.getString());
+		assertEquals("fused",2,wide.getFusedTokens());
+		assertEquals("cancelled",3,wide.getCancelledTokens());
+
+		narrow.beginC(2).print("</").print("x").print(">").beginC(0).end()
+			.ind(1,0).ind(0,0).brk(1,0).print("a").end().close();
+		assertEquals("narrow","</x>\n  a",narrowBack.getString());
+
+		char[] buf = "<name>".toCharArray();
+		six.beginC(0).print(buf,0,1).print(buf,1,4).print(buf,5,1)
+			.print("").brk(1,0).print("ab").print(buf,1,2).end().close();
+		assertEquals("chars","<name>\nabna",sixBack.getString());
+		assertEquals("fused chars",3,six.getFusedTokens());
+	}
+
+	class FlushCountingBackend extends StringBackend {
+		int flushes = 0;
+
+		FlushCountingBackend(int lineWidth) {
+			super(lineWidth);
+		}
+
+		public void flush() {
+			flushes++;
+		}
+	}
+
+	public void testLatencyBound() throws InterruptedException {
+		FlushCountingBackend back = new FlushCountingBackend(80);
+		Layouter<NoExceptions> l = new Layouter<NoExceptions>(back,2);
+		l.setLatencyBound(8,0,TimeUnit.SECONDS);
+		l.beginC(0).print("a").brk(1,0).print("b").brk(1,0);
+		assertEquals("buffered","",back.getString());
+		l.print("c").brk(1,0).print("d");
+		assertEquals("token bound","a\nb\nc\nd",back.getString());
+		assertEquals("flushed",1,back.flushes);
+		l.end().close();
+
+		back = new FlushCountingBackend(80);
+		l = new Layouter<NoExceptions>(back,2);
+		l.setLatencyBound(0,10,TimeUnit.MILLISECONDS);
+		l.beginC(0).print("a").brk(1,0);
+		assertEquals("buffered","",back.getString());
+		Thread.sleep(20);
+		l.print("b");
+		assertEquals("time bound","a\nb",back.getString());
+		assertEquals("flushed",1,back.flushes);
+		l.brk(1,0).print("c").flushPending();
+		assertEquals("flushPending","a\nb\nc",back.getString());
+		assertEquals("flushed",2,back.flushes);
+		l.end().close();
+	}
+
+	private String layOutText(int width, String text, boolean pre,
+			boolean reader) throws IOException {
+		StringBackend back = new StringBackend(width);
+		Layouter<NoExceptions> l = new Layouter<NoExceptions>(back,2);
+		l.beginC(2).print("[").brk(1,0);
+		if (reader) {
+			StringReader r = new StringReader(text);
+			if (pre) {
+				l.pre(r);
+			} else {
+				l.print(r);
+			}
+		} else {
+			if (pre) {
+				l.pre(text);
+			} else {
+				l.print(text);
+			}
+		}
+		l.brk(1,0).print("]").end().close();
+		return back.getString();
+	}
+
+	public void testReader() throws IOException {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; sb.length() < 10000; i++) {
+			sb.append(i % 7 == 0 ? "\n" : "word" + i + " ");
+		}
+		sb.setCharAt(4095,'\ud83d');
+		sb.setCharAt(4096,'\ude00');
+		String lines = sb.toString();
+		String line = lines.replace('\n',' ');
+		String[] texts = { "", "ab", "a\n\nb\n", line, lines };
+		int[] widths = { 1, 10, 80, 20000 };
+		for (String text : texts) {
+			for (int width : widths) {
+				if (text.indexOf('\n') < 0) {
+					assertEquals("print " + width,
+							layOutText(width,text,false,false),
+							layOutText(width,text,false,true));
+				}
+				assertEquals("pre " + width,
+						layOutText(width,text,true,false),
+						layOutText(width,text,true,true));
+			}
+		}
+	}
+
+	/** Produces <code>length</code> characters without holding them */
+	static class GeneratingReader extends Reader {
+		long left;
+
+		GeneratingReader(long length) {
+			left = length;
+		}
+
+		public int read(char[] buf, int off, int len) {
+			if (left == 0) {
+				return -1;
+			}
+			int n = (int) Math.min(len,left);
+			java.util.Arrays.fill(buf,off,off + n,'x');
+			left -= n;
+			return n;
+		}
+
+		public void close() { }
+	}
+
+	public void testLargeReader() throws IOException {
+		long length = 1L << 26;
+		final long[] chars = new long[1];
+		Backend<NoExceptions> back = new Backend<NoExceptions>() {
+			public void print(String s) { chars[0] += s.length(); }
+			public void print(char[] buf, int offset, int length) {
+				chars[0] += length;
+			}
+			public void writeSpaces(int n) { chars[0] += n; }
+			public void newLine() { chars[0]++; }
+			public void close() { }
+			public void flush() { }
+			public void mark(Object o) { }
+			public int lineWidth() { return 80; }
+			public int measure(String s) { return s.length(); }
+		};
+		Layouter<NoExceptions> l = new Layouter<NoExceptions>(back,2);
+		l.beginC(0).print("[").brk(1,0)
+			.print(new GeneratingReader(length)).print("]")
+			.end().close();
+		assertEquals("characters",length + 3,chars[0]);
+		assertTrue("characters buffered",
+				l.getPeakBufferedChars() <= 2 * 4096);
+	}
+
+	/** Lay out paragraphs with printWords, or with the per-word idiom
+	 * it replaces. */
+	private String layOutWords(int width, String[] texts, boolean words,
+			Layouter.LayoutMode mode) {
+		StringBackend back = new StringBackend(width);
+		Layouter<NoExceptions> l = new Layouter<NoExceptions>(back,2,mode);
+		l.beginC(2).print("<p>").brk(1,0).beginIInd(0);
+		for (int i = 0; i < texts.length; i++) {
+			if (i > 0) {
+				l.brk(1,0);
+			}
+			if (words) {
+				l.printWords(texts[i]);
+			} else {
+				String[] ws = texts[i].trim().split("\\s+");
+				for (int j = 0; j < ws.length; j++) {
+					if (j > 0) {
+						l.brk(1,0);
+					}
+					l.print(ws[j]);
+				}
+			}
+		}
+		l.print("</p>").end().brk(0,-2).print("x").end().close();
+		return back.getString();
+	}
+
+	public void testPrintWords() {
+		java.util.Random r = new java.util.Random(42);
+		String[] pieces = { "a", "bb", "cccc", "dddddddd", " ", "  ", 
+							"\n", "\t", "\r\n" };
+		int[] widths = { 1, 5, 10, 20, 40, 80 };
+		for (int k = 0; k < 500; k++) {
+			String[] texts = new String[1 + r.nextInt(3)];
+			for (int i = 0; i < texts.length; i++) {
+				StringBuilder sb = new StringBuilder();
+				for (int n = r.nextInt(40); n > 0; n--) {
+					sb.append(pieces[r.nextInt(pieces.length)]);
+				}
+				texts[i] = sb.toString();
+			}
+			for (int width : widths) {
+				for (Layouter.LayoutMode mode : Layouter.LayoutMode.values()) {
+					assertEquals("words " + k + " width " + width + " " + mode,
+							layOutWords(width,texts,false,mode),
+							layOutWords(width,texts,true,mode));
+				}
+			}
+		}
+
+		wide.beginIInd(0).printWords(" \tThe  quick\nbrown fox ")
+			.print(".").end().close();
+		assertEquals("The quick brown fox.",wideBack.getString());
+	}
+
+	public void testPrintWordsMeasuresOnce() {
+		final int[] measured = new int[1];
+		StringBackend back = new StringBackend(12) {
+			public int measure(String s) {
+				measured[0]++;
+				return s.length();
+			}
+
+			public int measure(char[] buf, int offset, int length) {
+				measured[0]++;
+				return length;
+			}
+		};
+		Layouter<NoExceptions> l = new Layouter<NoExceptions>(back,2);
+		l.beginIInd(0).printWords("one two three four five six seven")
+			.end().close();
+		assertEquals("one two\nthree four\nfive six\nseven",
+				back.getString());
+		assertEquals("measured",7,measured[0]);
+	}
+
+	public void testMarkBeforeNewLine() {
+		marking.beginC(2).print("A").brk(1,0).mark(null).nl()
+		.print("B").nl().mark(null).print("C").end().close();
+		assertEquals("no trailing whitespace","A\n\n  B\n  C",
+				markBack.getString());
+		assertEquals("number marks",2,markPtr);
+		assertEquals("mark at end of line",2,marks[0]);
+		assertEquals("mark after indentation",9,marks[1]);
+	}
+
 	public void testMark() {
 		marking.
 		beginC().mark(null) 
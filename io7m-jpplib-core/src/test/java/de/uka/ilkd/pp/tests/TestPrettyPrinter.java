@@ -0,0 +1,109 @@
+//This file is part of the Java™ Pretty Printer Library (JPPlib)
+//Copyright (c) 2009, Martin Giese
+//All rights reserved.
+//
+//Redistribution and use in source and binary forms, with or without 
+//modification, are permitted provided that the following conditions are met:
+// 
+// * Redistributions of source code must retain the above copyright 
+//   notice, this list of conditions and the following disclaimer.
+// * Redistributions in binary form must reproduce the above copyright 
+//   notice, this list of conditions and the following disclaimer in the 
+//   documentation and/or other materials provided with the distribution.
+// * Neither the name of the author nor the names of his contributors 
+//   may be used to endorse or promote products derived from this 
+//   software without specific prior written permission.
+// 
+//THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+//AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE 
+//IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+//ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE 
+//LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+//CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF 
+//SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+//INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+//CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+//ARISING IN ANY WAY OUT OF THE USE OF THIS  SOFTWARE, EVEN IF ADVISED OF 
+//THE POSSIBILITY OF SUCH DAMAGE.
+
+package de.uka.ilkd.pp.tests;
+
+import java.util.*;
+
+import de.uka.ilkd.pp.DataLayouter;
+import de.uka.ilkd.pp.NoExceptions;
+import de.uka.ilkd.pp.PrettyPrinter;
+import de.uka.ilkd.pp.StringBackend;
+import junit.framework.TestCase;
+
+/** Unit-Test the {@link PrettyPrinter} class. */
+
+public class TestPrettyPrinter extends TestCase {
+
+	PrettyPrinter pp;
+
+	public TestPrettyPrinter(String name) {
+		super(name);
+	}
+
+	public void setUp() {
+		pp = new PrettyPrinter(2, 2);
+	}
+
+	/** The layout of <code>o</code> by a fresh DataLayouter */
+	private static String expected(Object o, int width) {
+		StringBackend back = new StringBackend(width);
+		new DataLayouter<NoExceptions>(back,2).print(o).close();
+		return back.getString();
+	}
+
+	private static List<Object> data(int n) {
+		List<Object> l = new ArrayList<Object>();
+		for (int i = 0; i < n; i++) {
+			Map<String, Object> m = new TreeMap<String, Object>();
+			m.put("n", i);
+			m.put("square", i * i);
+			l.add(m);
+		}
+		return l;
+	}
+
+	public void testRender() {
+		List<Object> l = data(5);
+		assertEquals("narrow",expected(l,10),pp.render(l,10));
+		assertEquals("wide",expected(l,1000),pp.render(l,1000));
+		assertEquals("narrow again",expected(l,10),pp.render(l,10));
+	}
+
+	public void testRenderAppendable() throws Exception {
+		List<Object> l = data(3);
+		StringBuilder sb = new StringBuilder("> ");
+		pp.render(l,sb,20);
+		assertEquals("appended","> " + expected(l,20),sb.toString());
+	}
+
+	public void testConcurrentRender() throws Exception {
+		final List<Object> l = data(20);
+		final String expected = expected(l,30);
+		final List<String> failures = 
+			Collections.synchronizedList(new ArrayList<String>());
+		Thread[] threads = new Thread[8];
+		for (int t = 0; t < threads.length; t++) {
+			threads[t] = new Thread() {
+				public void run() {
+					for (int i = 0; i < 200; i++) {
+						String s = pp.render(l,30);
+						if (!expected.equals(s)) {
+							failures.add(s);
+						}
+					}
+				}
+			};
+			threads[t].start();
+		}
+		for (Thread t : threads) {
+			t.join();
+		}
+		assertEquals("failed renderings",0,failures.size());
+	}
+}
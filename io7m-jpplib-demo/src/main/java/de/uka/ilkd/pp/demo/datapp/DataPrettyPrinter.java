@@ -50,6 +50,11 @@ public class DataPrettyPrinter {
 	/** The indentation, in particular for Map entries. */
 	public static final int DEFAULT_INDENTATION = 2;
 
+	/** The shared, thread-safe pretty printer used by 
+	 * {@link #prettyPrint(Object)}. */
+	private static final PrettyPrinter PRETTY_PRINTER = 
+		new PrettyPrinter(DEFAULT_INDENTATION);
+
 	/**
 	 * Pretty print an object according to its type. See the
 	 * documentation of {@link DataLayouter#print(Object)} for a
@@ -60,11 +65,7 @@ public class DataPrettyPrinter {
 	 * @return the pretty-printed String representation of <code>o</code>
 	 */
 	public static String prettyPrint(Object o) {
-		StringBackend back = new StringBackend(DEFAULT_LINE_WIDTH);
-		DataLayouter<NoExceptions> out = new DataLayouter<NoExceptions>(back, DEFAULT_INDENTATION);
-		out.print(o);
-		out.close();
-		return back.getString();
+		return PRETTY_PRINTER.render(o, DEFAULT_LINE_WIDTH);
 	}
 	
 	/** Recursively consruct a tree with given arity and depth. */
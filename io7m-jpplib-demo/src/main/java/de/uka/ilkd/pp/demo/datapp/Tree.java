@@ -33,6 +33,9 @@ import java.util.ArrayList;
 import java.util.Collections;
 
 import de.uka.ilkd.pp.DataLayouter;
+import de.uka.ilkd.pp.FlatWidthHint;
+import de.uka.ilkd.pp.Layouter.BreakConsistency;
+import de.uka.ilkd.pp.Layouter.IndentationBase;
 import de.uka.ilkd.pp.PrettyPrintable;
 
 /** An variable-arity tree.
@@ -45,7 +48,7 @@ import de.uka.ilkd.pp.PrettyPrintable;
  *
  * @param <E> type of (internal and leaf) nodes
  */
-public class Tree<E> implements PrettyPrintable {
+public class Tree<E> implements PrettyPrintable, FlatWidthHint {
 
 	private E label;
 	private List<Tree<E>> children = new ArrayList<Tree<E>>();
@@ -88,6 +91,15 @@ public class Tree<E> implements PrettyPrintable {
 		return Collections.unmodifiableList(children);
 	}
 	
+	/** Return a lower bound for the width of this tree on one line:
+	 * that of the label, plus the parentheses and commas around the 
+	 * children.  The children themselves are not looked at, so this
+	 * takes constant time. */
+	public int minFlatWidth() {
+		int n = children.size();
+		return DataLayouter.minFlatWidth(label) + (n == 0 ? 0 : 2 * n);
+	}
+
 	/** Pretty-print the tree rooted at this node.
 	 * The layout for trees is 
 	 * <pre>
@@ -107,7 +119,8 @@ public class Tree<E> implements PrettyPrintable {
 	 */
 	public <Exc extends Exception> void prettyPrint(DataLayouter<Exc> l) 
 	throws Exc {
-		l.beginC(3).print(label);
+		l.begin(BreakConsistency.CONSISTENT, IndentationBase.FROM_POS, 
+				3, minFlatWidth()).print(label);
 		if (!isLeaf()) {
 			l.print("(").brk(0, 0);
 			boolean first = true;
@@ -81,13 +81,20 @@ public class DOMXMLPrettyPrinter {
 	private boolean insertBreak;
 
 	public DOMXMLPrettyPrinter(Document document) {
+		this(document, new BufferedWriter(new OutputStreamWriter(System.out)));
+	}
+
+	/** Create a pretty printer for <code>document</code> writing to 
+	 * <code>out</code>. */
+	public DOMXMLPrettyPrinter(Document document, Writer out) {
 		super();
 		this.document = document;
-		pp = Layouter.getWriterLayouter(new BufferedWriter(new OutputStreamWriter(System.out)));	
+		pp = Layouter.getWriterLayouter(out);	
 	}
 
-	void prettyPrint() throws IOException {
-		pp.beginC(0);
+	/** Pretty-print the document. */
+	public void prettyPrint() throws IOException {
+		pp.beginB(0);
         pp.print("<?xml version=\"1.0\"?>").nl();
 		insertBreak = false;
 		prettyPrint(document);
@@ -174,20 +181,9 @@ public class DOMXMLPrettyPrinter {
 	}
 
 	private void prettyPrintText(Node node) throws IOException {
-		// collect words
-		String quotedText = XMLUtils.quoteCharacterData(node.getNodeValue()).trim();
-		String[] words=quotedText.split("\\s+");
-		pp.beginIInd(0);
+		String quotedText = XMLUtils.quoteCharacterData(node.getNodeValue());
 		// output words separated by blanks
-		boolean brk = false;
-		for(String word:words) {
-			if (brk) {
-				pp.brk(1,0);
-			}
-			pp.print(word);
-			brk = true;
-		}
-		pp.end();
+		pp.beginIInd(0).printWords(quotedText).end();
 	}
 
 	private void prettyPrintProcessingInstruction(Node node) throws IOException {
@@ -32,11 +32,13 @@ import java.io.BufferedWriter;
 import java.io.IOException;
 import java.io.OutputStreamWriter;
 import java.io.PrintStream;
+import java.io.Writer;
 
 import javax.xml.parsers.SAXParser;
 import javax.xml.parsers.SAXParserFactory;
 
 import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
 import org.xml.sax.SAXException;
 import org.xml.sax.helpers.DefaultHandler;
 import org.xml.sax.helpers.ParserAdapter;
@@ -74,8 +76,6 @@ public class SimpleXMLPrettyPrinter extends DefaultHandler {
  
 	public static final int INDENTATION = 3;
 	
-	private PrintStream out;
-	
 	private Layouter<java.io.IOException> pp;
 
 	/** A call to break is required before printing
@@ -95,17 +95,19 @@ public class SimpleXMLPrettyPrinter extends DefaultHandler {
 	private boolean lastSawCharacters = false;
 	
 	public SimpleXMLPrettyPrinter(PrintStream out) {
-		this.out = out;
-		pp = Layouter.getWriterLayouter(new BufferedWriter(new OutputStreamWriter(this.out)));
+		this(new BufferedWriter(new OutputStreamWriter(out)));
+	}
+
+	/** Create a pretty printer writing to <code>out</code>. */
+	public SimpleXMLPrettyPrinter(Writer out) {
+		pp = Layouter.getWriterLayouter(out);
 	}
 
 	@Override
 	public void characters(char[] ch, int start, int length) 
 	throws SAXException {
 		try {
-			// collect words
-			String quotedText = XMLUtils.quoteCharacterData(ch, start, length).trim();
-			String[] words=quotedText.split("\\s+");
+			String quotedText = XMLUtils.quoteCharacterData(ch, start, length);
 			// if last element was already characters, continue with a
 			// separating brk, otherwise, start new inconsistent block.
 			if (lastSawCharacters) {
@@ -114,14 +116,7 @@ public class SimpleXMLPrettyPrinter extends DefaultHandler {
 				pp.beginIInd(0);
 			}
 			// output words separated by blanks
-			boolean brk = false;
-			for(String word:words) {
-				if (brk) {
-					pp.brk(1,0);
-				}
-				pp.print(word);
-				brk = true;
-			}
+			pp.printWords(quotedText);
 			lastSawCharacters = true;
 		} catch (IOException e) {
 			throw new SAXException(e);
@@ -202,6 +197,12 @@ public class SimpleXMLPrettyPrinter extends DefaultHandler {
 	}
 	
 	public void process(String urlString) 
+	throws Exception {
+		process(new InputSource(urlString));
+	}
+
+	/** Parse the document from <code>input</code> and pretty-print it. */
+	public void process(InputSource input) 
 	throws Exception {
 		SAXParserFactory spf = 
 			SAXParserFactory.newInstance();
@@ -209,10 +210,10 @@ public class SimpleXMLPrettyPrinter extends DefaultHandler {
 		ParserAdapter pa = 
 			new ParserAdapter(sp.getParser());
 		pa.setContentHandler(this);
-        pp.beginC(0);
+        pp.beginB(0);
         pp.print("<?xml version=\"1.0\"?>").nl();
         insertBreak = false;
-		pa.parse(urlString);
+		pa.parse(input);
 		if (insertBreak) {
 			pp.brk(0,0);
 		}
@@ -124,9 +124,7 @@ public class StyledXMLPrettyPrinter extends DefaultHandler {
 
 	@Override
 	public void characters(char[] ch, int start, int length) {
-		// collect words
-		String quotedText = XMLUtils.quoteCharacterData(ch, start, length).trim();
-		String[] words=quotedText.split("\\s+");
+		String quotedText = XMLUtils.quoteCharacterData(ch, start, length);
 		// if last element was arleady characters, continue with a
 		// separating brk, otherwise, start new inconsisten block.
 		if (lastSawCharacters) {
@@ -135,14 +133,7 @@ public class StyledXMLPrettyPrinter extends DefaultHandler {
 			pp.beginIInd(0);
 		}
 		// output words separated by blanks
-		boolean brk = false;
-		for(String word:words) {
-			if (brk) {
-				pp.brk(1,0);
-			}
-			pp.print(word);
-			brk = true;
-		}
+		pp.printWords(quotedText);
 		lastSawCharacters = true;
 	}
 
@@ -216,7 +207,7 @@ public class StyledXMLPrettyPrinter extends DefaultHandler {
 		SAXParser sp = SAXParserFactory.newInstance().newSAXParser();
 		ParserAdapter pa = new ParserAdapter(sp.getParser());
 		pa.setContentHandler(this);
-        pp.beginC(0).mark(ATTR_GRAY).print("<?xml version=\"1.0\"?>");
+        pp.beginB(0).mark(ATTR_GRAY).print("<?xml version=\"1.0\"?>");
         pp.mark(ATTR_EMPTY).nl();
         insertBreak = false;
 		pa.parse(urlString);